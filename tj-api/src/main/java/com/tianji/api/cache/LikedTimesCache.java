@@ -0,0 +1,58 @@
+package com.tianji.api.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.tianji.api.client.remark.RemarkClient;
+import com.tianji.common.utils.CollUtils;
+import lombok.RequiredArgsConstructor;
+
+import java.util.*;
+
+/**
+ * 业务实时点赞数的本地缓存，有效期很短，用于在列表页展示接近实时的点赞数
+ * <p>
+ * 缓存未命中的业务通过一次远程调用批量查询，查询失败的业务不缓存，由调用方使用自己保存的点赞数
+ * </p>
+ */
+@RequiredArgsConstructor
+public class LikedTimesCache {
+
+    private final Cache<String, Integer> likedTimesCaches;
+
+    private final RemarkClient remarkClient;
+
+    /**
+     * 批量查询业务的点赞数
+     * @return key是业务id，value是点赞数，查询失败的业务不包含在内
+     */
+    public Map<Long, Integer> getLikedTimes(String bizType, Collection<Long> bizIds) {
+        if (CollUtils.isEmpty(bizIds)) {
+            return CollUtils.emptyMap();
+        }
+        // 1.批量读取缓存，未命中的批量远程查询
+        List<String> keys = new ArrayList<>(bizIds.size());
+        for (Long bizId : bizIds) {
+            keys.add(keyOf(bizType, bizId));
+        }
+        Map<String, Integer> cached = likedTimesCaches.getAll(keys, missingKeys -> {
+            List<Long> missingIds = new ArrayList<>();
+            for (String key : missingKeys) {
+                missingIds.add(Long.valueOf(key.substring(key.lastIndexOf(':') + 1)));
+            }
+            Map<Long, Integer> likedTimes = remarkClient.queryLikedTimes(bizType, missingIds);
+            if (CollUtils.isEmpty(likedTimes)) {
+                return CollUtils.emptyMap();
+            }
+            Map<String, Integer> result = new HashMap<>(likedTimes.size());
+            likedTimes.forEach((bizId, times) -> result.put(keyOf(bizType, bizId), times));
+            return result;
+        });
+        // 2.转换数据
+        Map<Long, Integer> result = new HashMap<>(cached.size());
+        cached.forEach((key, times) -> result.put(Long.valueOf(key.substring(key.lastIndexOf(':') + 1)), times));
+        return result;
+    }
+
+    private static String keyOf(String bizType, Long bizId) {
+        return bizType + ":" + bizId;
+    }
+}
@@ -5,10 +5,24 @@ import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 
+import java.util.Map;
 import java.util.Set;
 
 @FeignClient(value = "remark-service", fallbackFactory = RemarkClientFallback.class)
 public interface RemarkClient {
     @GetMapping("/likes/list")
     Set<Long> isBizLiked(@RequestParam("bizIds") Iterable<Long> bizIds);
+
+    /**
+     * 查询指定类型业务的点赞状态，通过用户点赞过的业务索引一次查询完成
+     */
+    @GetMapping("/likes/list")
+    Set<Long> isBizLiked(@RequestParam("bizType") String bizType, @RequestParam("bizIds") Iterable<Long> bizIds);
+
+    /**
+     * 批量查询业务的实时点赞数
+     * @return key是业务id，value是点赞数
+     */
+    @GetMapping("/likes/times")
+    Map<Long, Integer> queryLikedTimes(@RequestParam("bizType") String bizType, @RequestParam("bizIds") Iterable<Long> bizIds);
 }
\ No newline at end of file
@@ -5,6 +5,7 @@ import com.tianji.common.utils.CollUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.openfeign.FallbackFactory;
 
+import java.util.Map;
 import java.util.Set;
 
 @Slf4j
@@ -19,6 +20,16 @@ public class RemarkClientFallback implements FallbackFactory<RemarkClient> {
             public Set<Long> isBizLiked(Iterable<Long> bizIds) {
                 return CollUtils.emptySet();
             }
+
+            @Override
+            public Set<Long> isBizLiked(String bizType, Iterable<Long> bizIds) {
+                return CollUtils.emptySet();
+            }
+
+            @Override
+            public Map<Long, Integer> queryLikedTimes(String bizType, Iterable<Long> bizIds) {
+                return CollUtils.emptyMap();
+            }
         };
     }
 }
\ No newline at end of file
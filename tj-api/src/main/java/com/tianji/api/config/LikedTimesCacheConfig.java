@@ -0,0 +1,30 @@
+package com.tianji.api.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tianji.api.cache.LikedTimesCache;
+import com.tianji.api.client.remark.RemarkClient;
+import org.springframework.context.annotation.Bean;
+
+import java.time.Duration;
+
+public class LikedTimesCacheConfig {
+    /**
+     * 业务点赞数的caffeine缓存，key是业务类型:业务id
+     */
+    @Bean
+    public Cache<String, Integer> likedTimesCaches(){
+        return Caffeine.newBuilder()
+                .initialCapacity(1024) // 初始容量
+                .maximumSize(100_000) // 最大内存限制
+                .expireAfterWrite(Duration.ofSeconds(2)) // 有效期
+                .build();
+    }
+    /**
+     * 业务点赞数的缓存工具类
+     */
+    @Bean
+    public LikedTimesCache likedTimesCache(Cache<String, Integer> likedTimesCaches, RemarkClient remarkClient){
+        return new LikedTimesCache(likedTimesCaches, remarkClient);
+    }
+}
@@ -77,5 +77,7 @@ public interface MqConstants {
 
         /*领取优惠券的key*/
         String COUPON_RECEIVE = "coupon.receive";
+        /*优惠券限定范围变更的key*/
+        String COUPON_SCOPE_CHANGED = "coupon.scope.changed";
     }
 }
@@ -0,0 +1,49 @@
+package com.tianji.learning.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.tianji.api.client.course.CourseClient;
+import com.tianji.api.dto.course.CourseSimpleInfoDTO;
+import com.tianji.common.utils.CollUtils;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 课程基本信息缓存，包含小节数量、有效期、名称等，未命中的课程通过getSimpleInfoList批量加载
+ */
+@RequiredArgsConstructor
+public class CourseCache {
+
+    private final Cache<Long, CourseSimpleInfoDTO> courseCaches;
+
+    private final CourseClient courseClient;
+
+    public CourseSimpleInfoDTO getCourse(Long courseId) {
+        if (courseId == null) {
+            return null;
+        }
+        return getCourses(List.of(courseId)).get(courseId);
+    }
+
+    public Map<Long, CourseSimpleInfoDTO> getCourses(Iterable<Long> courseIds) {
+        return courseCaches.getAll(courseIds, keys -> {
+            // 1.从CourseClient批量查询未命中的课程
+            List<Long> ids = new ArrayList<>();
+            keys.forEach(ids::add);
+            List<CourseSimpleInfoDTO> list = courseClient.getSimpleInfoList(ids);
+            if (CollUtils.isEmpty(list)) {
+                return CollUtils.emptyMap();
+            }
+            // 2.转换数据
+            return list.stream().collect(Collectors.toMap(CourseSimpleInfoDTO::getId, Function.identity()));
+        });
+    }
+
+    public void invalidate(Long courseId) {
+        courseCaches.invalidate(courseId);
+    }
+}
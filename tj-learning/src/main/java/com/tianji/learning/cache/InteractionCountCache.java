@@ -0,0 +1,135 @@
+package com.tianji.learning.cache;
+
+import com.tianji.common.utils.CollUtils;
+import com.tianji.learning.constants.RedisConstants;
+import com.tianji.learning.domain.po.InteractionQuestion;
+import com.tianji.learning.domain.po.InteractionReply;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 问题回答数、回答评论数的计数缓存
+ * <p>
+ * 新增回答或评论时只在Redis的Hash中HINCRBY累加增量，不再更新数据库的热点行，
+ * 由定时任务把增量批量写回数据库。查询时数据库的值加上待写回和正在写回的增量就是最新的数量。
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+public class InteractionCountCache {
+
+    private static final String FLUSHING_SUFFIX = ":flushing";
+    private static final RedisScript<List> TAKE_SCRIPT;
+
+    static {
+        TAKE_SCRIPT = RedisScript.of(new ClassPathResource("lua/hash_take.lua"), List.class);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+
+    public void incrAnswerTimes(Long questionId) {
+        redisTemplate.opsForHash().increment(RedisConstants.QUESTION_ANSWER_TIMES_KEY, questionId.toString(), 1);
+    }
+
+    public void incrReplyTimes(Long answerId) {
+        redisTemplate.opsForHash().increment(RedisConstants.REPLY_REPLY_TIMES_KEY, answerId.toString(), 1);
+    }
+
+    /**
+     * 把未写回的回答数增量加到问题上
+     */
+    public void fillAnswerTimes(List<InteractionQuestion> questions) {
+        fill(RedisConstants.QUESTION_ANSWER_TIMES_KEY, questions,
+                InteractionQuestion::getId, InteractionQuestion::getAnswerTimes, InteractionQuestion::setAnswerTimes);
+    }
+
+    /**
+     * 把未写回的评论数增量加到回答上
+     */
+    public void fillReplyTimes(List<InteractionReply> replies) {
+        fill(RedisConstants.REPLY_REPLY_TIMES_KEY, replies,
+                InteractionReply::getId, InteractionReply::getReplyTimes, InteractionReply::setReplyTimes);
+    }
+
+    /**
+     * 取出待写回的回答数增量，写回成功后调用{@link #ackAnswerTimes()}，失败则下次取出的仍是这批数据
+     */
+    public Map<Long, Integer> takeAnswerTimes() {
+        return take(RedisConstants.QUESTION_ANSWER_TIMES_KEY);
+    }
+
+    public void ackAnswerTimes() {
+        redisTemplate.delete(RedisConstants.QUESTION_ANSWER_TIMES_KEY + FLUSHING_SUFFIX);
+    }
+
+    /**
+     * 取出待写回的评论数增量，写回成功后调用{@link #ackReplyTimes()}，失败则下次取出的仍是这批数据
+     */
+    public Map<Long, Integer> takeReplyTimes() {
+        return take(RedisConstants.REPLY_REPLY_TIMES_KEY);
+    }
+
+    public void ackReplyTimes() {
+        redisTemplate.delete(RedisConstants.REPLY_REPLY_TIMES_KEY + FLUSHING_SUFFIX);
+    }
+
+    private <T> void fill(String key, List<T> list, Function<T, Long> idGetter,
+                          Function<T, Integer> timesGetter, BiConsumer<T, Integer> timesSetter) {
+        if (CollUtils.isEmpty(list)) {
+            return;
+        }
+        List<String> fields = new ArrayList<>(list.size());
+        for (T t : list) {
+            fields.add(idGetter.apply(t).toString());
+        }
+        // 待写回的增量和正在写回的增量都还没有计入数据库，一次管道查询
+        String[] fieldArr = fields.toArray(new String[0]);
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection src = (StringRedisConnection) connection;
+            src.hMGet(key, fieldArr);
+            src.hMGet(key + FLUSHING_SUFFIX, fieldArr);
+            return null;
+        });
+        List<?> pending = (List<?>) results.get(0);
+        List<?> flushing = (List<?>) results.get(1);
+        for (int i = 0; i < list.size(); i++) {
+            int delta = parseDelta(pending.get(i)) + parseDelta(flushing.get(i));
+            if (delta == 0) {
+                continue;
+            }
+            T t = list.get(i);
+            Integer times = timesGetter.apply(t);
+            timesSetter.accept(t, (times == null ? 0 : times) + delta);
+        }
+    }
+
+    private int parseDelta(Object delta) {
+        return delta == null ? 0 : Integer.parseInt(delta.toString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, Integer> take(String key) {
+        List<String> entries = redisTemplate.execute(TAKE_SCRIPT, List.of(key, key + FLUSHING_SUFFIX));
+        if (CollUtils.isEmpty(entries)) {
+            return CollUtils.emptyMap();
+        }
+        // HGETALL返回field、value交替的列表
+        Map<Long, Integer> deltas = new HashMap<>(entries.size() / 2);
+        for (int i = 0; i + 1 < entries.size(); i += 2) {
+            deltas.put(Long.valueOf(entries.get(i)), Integer.valueOf(entries.get(i + 1)));
+        }
+        return deltas;
+    }
+}
@@ -0,0 +1,165 @@
+package com.tianji.learning.cache;
+
+import com.tianji.common.utils.CollUtils;
+import com.tianji.common.utils.DateUtils;
+import com.tianji.learning.constants.RedisConstants;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户本周学习计划统计
+ * <p>
+ * 每个用户每周一个Hash：learning:plan:week:20230102:110，Key中是本周一的日期，换周后自然使用新Key，旧Key自动过期。
+ * field：finished是本周学完的小节数，points是本周积分，l:{lessonId}是各课表本周学完的小节数。
+ * 首次查询时从数据库统计并初始化，之后学完小节、获得积分时增量累加。
+ * 未初始化时的增量只累加版本号ver，统计期间版本号变化说明统计结果可能遗漏了增量，放弃初始化，下次查询重新统计。
+ * 积分记录异步写入数据库，未初始化时发放的积分记录在pending中计数，写入数据库前不初始化，写入后减少计数并累加版本号。
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LearningPlanCache {
+
+    private static final DateTimeFormatter WEEK_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final String FIELD_FINISHED = "finished";
+    private static final String FIELD_POINTS = "points";
+    private static final String FIELD_VERSION = "ver";
+    private static final String FIELD_LESSON_PREFIX = "l:";
+    private static final long KEY_TTL_SECONDS = TimeUnit.DAYS.toSeconds(8);
+    private static final RedisScript<Long> INIT_SCRIPT;
+    private static final RedisScript<Long> INCR_SCRIPT;
+    private static final RedisScript<Long> PERSISTED_SCRIPT;
+
+    static {
+        INIT_SCRIPT = RedisScript.of(new ClassPathResource("lua/plan_week_init.lua"), Long.class);
+        INCR_SCRIPT = RedisScript.of(new ClassPathResource("lua/plan_week_incr.lua"), Long.class);
+        PERSISTED_SCRIPT = RedisScript.of(new ClassPathResource("lua/plan_week_persisted.lua"), Long.class);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+
+    public String weekKeyOf(Long userId, LocalDate date) {
+        return RedisConstants.PLAN_WEEK_KEY_PREFIX
+                + DateUtils.getWeekBeginTime(date).format(WEEK_FORMATTER) + ":" + userId;
+    }
+
+    /**
+     * 查询本周统计
+     * @return 未初始化返回null
+     */
+    public WeekPlanStats get(Long userId, LocalDate date) {
+        Map<Object, Object> entries = redisTemplate.opsForHash().entries(weekKeyOf(userId, date));
+        if (CollUtils.isEmpty(entries) || !entries.containsKey(FIELD_FINISHED)) {
+            return null;
+        }
+        WeekPlanStats stats = new WeekPlanStats();
+        entries.forEach((k, v) -> {
+            String field = k.toString();
+            int value = Integer.parseInt(v.toString());
+            if (FIELD_FINISHED.equals(field)) {
+                stats.setFinished(value);
+            } else if (FIELD_POINTS.equals(field)) {
+                stats.setPoints(value);
+            } else if (field.startsWith(FIELD_LESSON_PREFIX)) {
+                stats.getLessonFinished().put(Long.valueOf(field.substring(FIELD_LESSON_PREFIX.length())), value);
+            }
+        });
+        return stats;
+    }
+
+    /**
+     * 查询未初始化的统计的版本号，需要在从数据库统计之前读取
+     */
+    public String getVersion(Long userId, LocalDate date) {
+        Object version = redisTemplate.opsForHash().get(weekKeyOf(userId, date), FIELD_VERSION);
+        return version == null ? "0" : version.toString();
+    }
+
+    /**
+     * 用数据库的统计结果初始化本周统计，已初始化或版本号已变化则不写入
+     * @param version 从数据库统计之前读取的版本号
+     */
+    public void init(Long userId, LocalDate date, String version, WeekPlanStats stats) {
+        List<String> args = new ArrayList<>(6 + stats.getLessonFinished().size() * 2);
+        args.add(String.valueOf(KEY_TTL_SECONDS));
+        args.add(version);
+        args.add(FIELD_FINISHED);
+        args.add(String.valueOf(stats.getFinished()));
+        args.add(FIELD_POINTS);
+        args.add(String.valueOf(stats.getPoints()));
+        stats.getLessonFinished().forEach((lessonId, num) -> {
+            args.add(FIELD_LESSON_PREFIX + lessonId);
+            args.add(String.valueOf(num));
+        });
+        redisTemplate.execute(INIT_SCRIPT, List.of(weekKeyOf(userId, date)), args.toArray());
+    }
+
+    /**
+     * 累加本周学完的小节数，在事务中调用时等事务提交后再累加，事务回滚则不累加
+     */
+    public void incrFinished(Long userId, Long lessonId, int sections) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            doIncrFinished(userId, lessonId, sections);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                doIncrFinished(userId, lessonId, sections);
+            }
+        });
+    }
+
+    private void doIncrFinished(Long userId, Long lessonId, int sections) {
+        try {
+            redisTemplate.execute(INCR_SCRIPT, List.of(weekKeyOf(userId, LocalDate.now())),
+                    lessonId.toString(), String.valueOf(sections), String.valueOf(KEY_TTL_SECONDS));
+        } catch (Exception e) {
+            log.error("累加本周学习计划统计异常", e);
+        }
+    }
+
+    /**
+     * 未初始化时发放的积分记录已写入数据库，在写库成功后调用
+     * @param weekKeyCounts 本周统计的Key和其中已写入数据库的积分记录数
+     */
+    public void ackPersistedPoints(Map<String, Integer> weekKeyCounts) {
+        if (CollUtils.isEmpty(weekKeyCounts)) {
+            return;
+        }
+        String script = PERSISTED_SCRIPT.getScriptAsString();
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection src = (StringRedisConnection) connection;
+                weekKeyCounts.forEach((key, count) -> src.eval(script, ReturnType.INTEGER, 1, key, count.toString()));
+                return null;
+            });
+        } catch (Exception e) {
+            // 失败时只是本周统计暂时无法缓存，不能影响积分记录的持久化
+            log.error("更新本周学习计划待持久化积分记录数异常", e);
+        }
+    }
+
+    @Data
+    public static class WeekPlanStats {
+        private int finished;
+        private int points;
+        private Map<Long, Integer> lessonFinished = new HashMap<>();
+    }
+}
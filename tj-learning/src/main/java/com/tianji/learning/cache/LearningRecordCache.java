@@ -0,0 +1,205 @@
+package com.tianji.learning.cache;
+
+import com.tianji.common.utils.CollUtils;
+import com.tianji.common.utils.StringUtils;
+import com.tianji.learning.config.LearningProperties;
+import com.tianji.learning.domain.po.LearningRecord;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 学习记录播放进度缓存
+ * <p>
+ * 每个课表一个Hash，field是小节id，value是紧凑编码：id|moment|finished，finished用1/0表示
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LearningRecordCache {
+
+    private final static String RECORD_KEY_TEMPLATE = "learning:record:{}";
+    private static final RedisScript<String> UPDATE_MOMENT_SCRIPT;
+    private static final RedisScript<Long> PUT_SCRIPT;
+
+    static {
+        UPDATE_MOMENT_SCRIPT = RedisScript.of(new ClassPathResource("lua/record_cache_update.lua"), String.class);
+        PUT_SCRIPT = RedisScript.of(new ClassPathResource("lua/record_cache_put.lua"), Long.class);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final LearningProperties properties;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * 读取缓存，同时把播放进度更新为moment并刷新有效期，一次Lua调用完成
+     * @return 更新前的缓存数据，不存在返回null
+     */
+    public LearningRecord getAndUpdateMoment(Long lessonId, Long sectionId, Integer moment) {
+        try {
+            String old = redisTemplate.execute(UPDATE_MOMENT_SCRIPT, List.of(keyOf(lessonId)),
+                    sectionId.toString(), String.valueOf(moment), ttlSeconds());
+            return countAndDecode(old);
+        } catch (Exception e) {
+            log.error("缓存读取异常", e);
+            return null;
+        }
+    }
+
+    public LearningRecord get(Long lessonId, Long sectionId) {
+        try {
+            Object cacheData = redisTemplate.opsForHash().get(keyOf(lessonId), sectionId.toString());
+            return countAndDecode(cacheData);
+        } catch (Exception e) {
+            log.error("缓存读取异常", e);
+            return null;
+        }
+    }
+
+    /**
+     * 管道批量读取缓存
+     * @param keys 需要读取的小节，只需要lessonId和sectionId
+     * @return 与keys一一对应的缓存数据，不存在的为null
+     */
+    public List<LearningRecord> getAll(List<LearningRecord> keys) {
+        List<Object> objects = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection src = (StringRedisConnection) connection;
+            for (LearningRecord k : keys) {
+                src.hGet(keyOf(k.getLessonId()), k.getSectionId().toString());
+            }
+            return null;
+        });
+        List<LearningRecord> records = new ArrayList<>(objects.size());
+        for (Object cacheData : objects) {
+            records.add(countAndDecode(cacheData));
+        }
+        return records;
+    }
+
+    /**
+     * 读取课表下所有缓存的学习记录，包含还未持久化的播放进度
+     * @return key是小节id
+     */
+    public Map<Long, LearningRecord> getByLesson(Long lessonId) {
+        Map<Object, Object> entries;
+        try {
+            entries = redisTemplate.opsForHash().entries(keyOf(lessonId));
+        } catch (Exception e) {
+            log.error("缓存读取异常", e);
+            return CollUtils.emptyMap();
+        }
+        Map<Long, LearningRecord> records = new HashMap<>(entries.size());
+        entries.forEach((field, value) -> {
+            LearningRecord record = countAndDecode(value);
+            if (record != null) {
+                Long sectionId = Long.valueOf(field.toString());
+                records.put(sectionId, record.setLessonId(lessonId).setSectionId(sectionId));
+            }
+        });
+        return records;
+    }
+
+    /**
+     * 写入缓存并刷新有效期，一次Lua调用完成
+     */
+    public void put(LearningRecord record) {
+        log.debug("更新学习记录的缓存数据");
+        try {
+            redisTemplate.execute(PUT_SCRIPT, List.of(keyOf(record.getLessonId())),
+                    record.getSectionId().toString(), encode(record), ttlSeconds());
+        } catch (Exception e) {
+            log.error("更新学习记录缓存异常", e);
+        }
+    }
+
+    public void putAll(List<LearningRecord> records) {
+        if (CollUtils.isEmpty(records)) {
+            return;
+        }
+        long ttl = properties.getRecordTask().getCacheTtlSeconds();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection src = (StringRedisConnection) connection;
+            for (LearningRecord record : records) {
+                String key = keyOf(record.getLessonId());
+                src.hSet(key, record.getSectionId().toString(), encode(record));
+                src.expire(key, ttl);
+            }
+            return null;
+        });
+    }
+
+    public void remove(Long lessonId, Long sectionId) {
+        redisTemplate.opsForHash().delete(keyOf(lessonId), sectionId.toString());
+    }
+
+    public void removeAll(List<LearningRecord> records) {
+        if (CollUtils.isEmpty(records)) {
+            return;
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection src = (StringRedisConnection) connection;
+            for (LearningRecord record : records) {
+                src.hDel(keyOf(record.getLessonId()), record.getSectionId().toString());
+            }
+            return null;
+        });
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private String keyOf(Long lessonId) {
+        return StringUtils.format(RECORD_KEY_TEMPLATE, lessonId);
+    }
+
+    private String ttlSeconds() {
+        return String.valueOf(properties.getRecordTask().getCacheTtlSeconds());
+    }
+
+    private LearningRecord countAndDecode(Object cacheData) {
+        if (cacheData == null) {
+            misses.increment();
+            return null;
+        }
+        try {
+            LearningRecord record = decode(cacheData.toString());
+            hits.increment();
+            return record;
+        } catch (RuntimeException e) {
+            log.warn("学习记录缓存格式错误：{}", cacheData);
+            misses.increment();
+            return null;
+        }
+    }
+
+    static String encode(LearningRecord record) {
+        return record.getId() + "|" + record.getMoment() + "|" + (Boolean.TRUE.equals(record.getFinished()) ? 1 : 0);
+    }
+
+    static LearningRecord decode(String value) {
+        int i = value.indexOf('|');
+        int j = value.indexOf('|', i + 1);
+        return new LearningRecord()
+                .setId(Long.valueOf(value.substring(0, i)))
+                .setMoment(Integer.valueOf(value.substring(i + 1, j)))
+                .setFinished(value.charAt(j + 1) == '1');
+    }
+}
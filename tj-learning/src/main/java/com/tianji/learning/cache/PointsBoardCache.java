@@ -0,0 +1,140 @@
+package com.tianji.learning.cache;
+
+import com.tianji.common.utils.CollUtils;
+import com.tianji.learning.config.LearningProperties;
+import com.tianji.learning.domain.po.PointsBoard;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 历史赛季榜单快照缓存
+ * <p>
+ * 历史赛季归档后不再变化，快照不设置有效期，只在重新归档时删除。
+ * 每个赛季两个Key：
+ * <ul>
+ *     <li>boards:history:{season}:top，List，按名次保存前N名，元素格式：userId|points</li>
+ *     <li>boards:history:{season}:users，Hash，按需缓存用户的名次，field是userId，value格式：rank|points，未上榜为0</li>
+ * </ul>
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PointsBoardCache {
+
+    private static final String HISTORY_KEY_PREFIX = "boards:history:";
+    private static final String NOT_ON_BOARD = "0";
+
+    private final StringRedisTemplate redisTemplate;
+    private final LearningProperties properties;
+
+    /**
+     * 快照中保存的前N名数量
+     */
+    public int topSize() {
+        return properties.getBoardCache().getHistoryTopSize();
+    }
+
+    /**
+     * 从快照中读取一页榜单
+     * @return 快照不存在返回null；分页超出前N名且快照已满，也返回null，需要查询数据库
+     */
+    public List<PointsBoard> getTopPage(Long season, int from, int size) {
+        String key = topKeyOf(season);
+        Long total = redisTemplate.opsForList().size(key);
+        if (total == null || total == 0) {
+            return null;
+        }
+        if (from + size > total && total >= topSize()) {
+            // 快照已满说明赛季人数可能多于N，超出部分不在快照中
+            return null;
+        }
+        List<String> values = redisTemplate.opsForList().range(key, from, from + size - 1L);
+        if (CollUtils.isEmpty(values)) {
+            return CollUtils.emptyList();
+        }
+        List<PointsBoard> list = new ArrayList<>(values.size());
+        int rank = from + 1;
+        for (String value : values) {
+            int i = value.indexOf('|');
+            PointsBoard board = new PointsBoard();
+            board.setUserId(Long.valueOf(value.substring(0, i)));
+            board.setPoints(Integer.valueOf(value.substring(i + 1)));
+            board.setRank(rank++);
+            list.add(board);
+        }
+        return list;
+    }
+
+    /**
+     * 保存前N名快照，先写临时Key再RENAME，并发构建时也不会出现重复数据
+     * @param boards 按名次排序的榜单
+     */
+    public void saveTop(Long season, List<PointsBoard> boards) {
+        if (CollUtils.isEmpty(boards)) {
+            return;
+        }
+        String key = topKeyOf(season);
+        String tmpKey = key + ":" + UUID.randomUUID();
+        List<String> values = new ArrayList<>(boards.size());
+        for (PointsBoard board : boards) {
+            values.add(board.getUserId() + "|" + board.getPoints());
+        }
+        redisTemplate.opsForList().rightPushAll(tmpKey, values);
+        redisTemplate.rename(tmpKey, key);
+    }
+
+    /**
+     * 读取用户在历史赛季的名次
+     * @return 未缓存返回null；已缓存但未上榜，返回名次为0的数据
+     */
+    public PointsBoard getUserBoard(Long season, Long userId) {
+        Object value = redisTemplate.opsForHash().get(usersKeyOf(season), userId.toString());
+        if (value == null) {
+            return null;
+        }
+        PointsBoard board = new PointsBoard();
+        board.setUserId(userId);
+        String s = value.toString();
+        int i = s.indexOf('|');
+        if (i < 0) {
+            board.setRank(0);
+            board.setPoints(0);
+            return board;
+        }
+        board.setRank(Integer.valueOf(s.substring(0, i)));
+        board.setPoints(Integer.valueOf(s.substring(i + 1)));
+        return board;
+    }
+
+    /**
+     * 缓存用户在历史赛季的名次
+     * @param board 用户的榜单数据，null表示未上榜
+     */
+    public void putUserBoard(Long season, Long userId, PointsBoard board) {
+        String value = board == null ? NOT_ON_BOARD : board.getRank() + "|" + board.getPoints();
+        redisTemplate.opsForHash().put(usersKeyOf(season), userId.toString(), value);
+    }
+
+    /**
+     * 删除赛季快照，重新归档时调用
+     */
+    public void invalidateSeason(Long season) {
+        redisTemplate.unlink(List.of(topKeyOf(season), usersKeyOf(season)));
+        log.debug("删除赛季{}的榜单快照", season);
+    }
+
+    private String topKeyOf(Long season) {
+        return HISTORY_KEY_PREFIX + season + ":top";
+    }
+
+    private String usersKeyOf(Long season) {
+        return HISTORY_KEY_PREFIX + season + ":users";
+    }
+}
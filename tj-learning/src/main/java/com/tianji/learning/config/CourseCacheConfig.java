@@ -0,0 +1,33 @@
+package com.tianji.learning.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tianji.api.client.course.CourseClient;
+import com.tianji.api.dto.course.CourseSimpleInfoDTO;
+import com.tianji.learning.cache.CourseCache;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class CourseCacheConfig {
+    /**
+     * 课程基本信息的caffeine缓存
+     */
+    @Bean
+    public Cache<Long, CourseSimpleInfoDTO> courseCaches(){
+        return Caffeine.newBuilder()
+                .initialCapacity(256) // 初始容量
+                .maximumSize(10_000) // 最大数量限制
+                .expireAfterWrite(Duration.ofMinutes(30)) // 有效期，课程上下架时会主动失效
+                .build();
+    }
+    /**
+     * 课程基本信息的缓存工具类
+     */
+    @Bean
+    public CourseCache courseCache(Cache<Long, CourseSimpleInfoDTO> courseCaches, CourseClient courseClient){
+        return new CourseCache(courseCaches, courseClient);
+    }
+}
@@ -0,0 +1,32 @@
+package com.tianji.learning.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class EnrichExecutorConfig {
+
+    /**
+     * 并行查询关联数据的线程池，队列满时直接拒绝，由调用方降级
+     */
+    @Bean
+    public Executor enrichExecutor(){
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        // 1.核心线程池大小
+        executor.setCorePoolSize(8);
+        // 2.最大线程池大小
+        executor.setMaxPoolSize(16);
+        // 3.队列大小
+        executor.setQueueCapacity(200);
+        // 4.线程名称
+        executor.setThreadNamePrefix("learning-enrich-");
+        // 5.拒绝策略
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,104 @@
+package com.tianji.learning.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "tj.learning")
+public class LearningProperties {
+
+    /**
+     * 学习记录延迟持久化配置
+     */
+    @NestedConfigurationProperty
+    private RecordTask recordTask = new RecordTask();
+
+    /**
+     * 历史赛季榜单归档配置
+     */
+    @NestedConfigurationProperty
+    private BoardArchive boardArchive = new BoardArchive();
+
+    /**
+     * 榜单缓存配置
+     */
+    @NestedConfigurationProperty
+    private BoardCache boardCache = new BoardCache();
+
+    /**
+     * 用户活跃位图的保留天数
+     */
+    private int activityKeepDays = 100;
+
+    /**
+     * 并行查询关联数据时每个查询的超时时间，单位毫秒
+     */
+    private long enrichTimeoutMillis = 800;
+
+    @Data
+    public static class RecordTask {
+        /**
+         * 延迟任务分片数量，按lessonId分片，每个分片对应一个Redis ZSet和一个消费线程
+         */
+        private int shards = 4;
+        /**
+         * 每次批量写库的最大记录数
+         */
+        private int batchSize = 200;
+        /**
+         * 播放进度的延迟持久化时间，单位秒
+         */
+        private int delaySeconds = 20;
+        /**
+         * 没有到期任务时的轮询间隔，单位毫秒
+         */
+        private long pollIntervalMillis = 500;
+        /**
+         * 播放进度缓存的有效期，单位秒，需覆盖延迟时间和服务重启的时间
+         */
+        private int cacheTtlSeconds = 180;
+    }
+
+    @Data
+    public static class BoardArchive {
+        /**
+         * 每次从Redis读取的榜单条数，分片按块轮流读取
+         */
+        private int chunkSize = 5000;
+        /**
+         * 每条insert语句写入的最大行数
+         */
+        private int insertBatchSize = 1000;
+        /**
+         * 归档进度的有效期，单位天
+         */
+        private int checkpointTtlDays = 7;
+    }
+
+    @Data
+    public static class BoardCache {
+        /**
+         * 历史赛季快照中保存的前N名数量
+         */
+        private int historyTopSize = 1000;
+        /**
+         * 当前赛季缓存的热点页数，只缓存前几页
+         */
+        private int hotPages = 5;
+        /**
+         * 热点页允许的最大分页大小，超过则不走缓存
+         */
+        private int hotPageMaxSize = 50;
+        /**
+         * 热点页的后台刷新间隔，单位毫秒
+         */
+        private long hotPageRefreshMillis = 2000;
+        /**
+         * 热点页的最长有效期，单位毫秒，超过后同步重新加载
+         */
+        private long hotPageTtlMillis = 10000;
+    }
+}
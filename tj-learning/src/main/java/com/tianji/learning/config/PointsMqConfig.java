@@ -0,0 +1,39 @@
+package com.tianji.learning.config;
+
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class PointsMqConfig {
+    /**
+     * 积分消息单批次最大消息数
+     */
+    public static final int POINTS_BATCH_SIZE = 100;
+
+    /**
+     * 积分消息的批量消费容器工厂
+     * 一次拉取多条消息交给监听器处理，监听器正常返回后整批ack。监听器内部有限次重试，仍失败时投递到错误队列，
+     * 只有投递错误队列也失败才抛出异常整批重新入队，积分按消息id去重，重复处理不会重复发放
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory pointsBatchContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        // 1.开启批量消费
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(POINTS_BATCH_SIZE);
+        // 2.凑不满一批时最多等待的时间，单位毫秒
+        factory.setReceiveTimeout(500L);
+        // 3.预取数量不能小于批次大小
+        factory.setPrefetchCount(POINTS_BATCH_SIZE * 2);
+        // 4.批量消息不走单条消息的重试拦截器，重试和错误队列投递由监听器处理
+        factory.setAdviceChain();
+        factory.setDefaultRequeueRejected(true);
+        return factory;
+    }
+}
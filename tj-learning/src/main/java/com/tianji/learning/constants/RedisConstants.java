@@ -9,4 +9,52 @@ public interface RedisConstants {
      * 积分排行榜的Key的前缀：boards:202301
      */
     String POINTS_BOARD_KEY_PREFIX = "boards:";
+    /**
+     * 学习记录延迟任务的Key的前缀：learning:record:delay:0，后缀是分片序号
+     */
+    String RECORD_DELAY_KEY_PREFIX = "learning:record:delay:";
+    /**
+     * 用户每日各类型积分的Key的前缀：points:daily:20230101:110，field是积分类型
+     */
+    String POINTS_DAILY_KEY_PREFIX = "points:daily:";
+    /**
+     * 待持久化的积分记录列表的Key
+     */
+    String POINTS_RECORD_PENDING_KEY = "points:record:pending";
+    /**
+     * 正在持久化的积分记录列表的Key，写库成功后才删除
+     */
+    String POINTS_RECORD_PROCESSING_KEY = "points:record:processing";
+    /**
+     * 已发放积分的消息的去重Key的前缀：points:msg:消息id
+     */
+    String POINTS_MESSAGE_KEY_PREFIX = "points:msg:";
+    /**
+     * 榜单归档进度的Key的前缀：boards:archive:202301，field是分片序号/分片总数，value是下一个待归档的块序号
+     */
+    String POINTS_BOARD_ARCHIVE_KEY_PREFIX = "boards:archive:";
+    /**
+     * 用户活跃位图的Key的前缀：activity:learn:20230101，偏移量是用户的位图序号
+     */
+    String ACTIVITY_KEY_PREFIX = "activity:";
+    /**
+     * 用户id到位图序号的映射，Hash结构，field是userId
+     */
+    String ACTIVITY_OFFSET_KEY = "activity:uid:offset";
+    /**
+     * 位图序号的自增序列
+     */
+    String ACTIVITY_OFFSET_SEQ_KEY = "activity:uid:seq";
+    /**
+     * 问题回答数待写回增量的Key，Hash结构，field是问题id
+     */
+    String QUESTION_ANSWER_TIMES_KEY = "qa:times:answer";
+    /**
+     * 回答评论数待写回增量的Key，Hash结构，field是回答id
+     */
+    String REPLY_REPLY_TIMES_KEY = "qa:times:reply";
+    /**
+     * 用户本周学习计划统计的Key的前缀：learning:plan:week:20230102:110，日期是本周一
+     */
+    String PLAN_WEEK_KEY_PREFIX = "learning:plan:week:";
 }
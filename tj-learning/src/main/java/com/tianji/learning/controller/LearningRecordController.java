@@ -3,6 +3,7 @@ package com.tianji.learning.controller;
 
 import com.tianji.api.dto.leanring.LearningLessonDTO;
 import com.tianji.learning.domain.dto.LearningRecordFormDTO;
+import com.tianji.learning.domain.vo.LearningRecordDeltaVO;
 import com.tianji.learning.service.ILearningLessonService;
 import com.tianji.learning.service.ILearningRecordService;
 import io.swagger.annotations.Api;
@@ -12,6 +13,8 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 /**
  * <p>
  * 学习记录表 前端控制器
@@ -36,9 +39,24 @@ public class LearningRecordController {
         return recordService.queryLearningRecordByCourse(courseId);
     }
 
+    @ApiOperation("增量查询指定课程的学习记录")
+    @GetMapping("/course/{courseId}/delta")
+    public LearningRecordDeltaVO queryLearningRecordDelta(
+            @ApiParam(value = "课程id", example = "2") @PathVariable("courseId") Long courseId,
+            @ApiParam(value = "上次同步的时间戳，为空则返回全部", example = "1672531200000")
+            @RequestParam(value = "since", required = false) Long since){
+        return recordService.queryLearningRecordDelta(courseId, since);
+    }
+
     @ApiOperation("提交学习记录")
     @PostMapping
     public void addLearningRecord(@RequestBody LearningRecordFormDTO formDTO){
         recordService.addLearningRecord(formDTO);
     }
+
+    @ApiOperation("批量提交学习记录")
+    @PostMapping("/batch")
+    public void addLearningRecords(@RequestBody List<LearningRecordFormDTO> formDTOs){
+        recordService.addLearningRecords(formDTOs);
+    }
 }
@@ -1,13 +1,16 @@
 package com.tianji.learning.controller;
 
 import com.tianji.learning.domain.vo.SignResultVO;
+import com.tianji.learning.domain.vo.SignStatsVO;
 import com.tianji.learning.service.ISignRecordService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @Api(tags = "签到相关接口")
@@ -29,4 +32,12 @@ public class SignRecordController {
     public Byte[] querySignRecords() {
         return recordService.querySignRecords();
     }
+
+    @GetMapping("/stats")
+    @ApiOperation("查询签到日历和连续签到统计")
+    public SignStatsVO querySignStats(
+            @ApiParam(value = "月份，格式：yyyyMM，为空则查询当月", example = "202301")
+            @RequestParam(value = "month", required = false) String month) {
+        return recordService.querySignStats(month);
+    }
 }
@@ -0,0 +1,56 @@
+package com.tianji.learning.controller;
+
+import com.tianji.learning.domain.vo.ActivityRetentionVO;
+import com.tianji.learning.enums.ActivityType;
+import com.tianji.learning.service.IUserActivityService;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+
+@Api(tags = "用户活跃统计相关接口")
+@RestController
+@RequestMapping("/admin/activity-stats")
+@RequiredArgsConstructor
+public class UserActivityController {
+
+    private final IUserActivityService activityService;
+
+    @GetMapping("/daily")
+    @ApiOperation("查询某天的活跃用户数")
+    public Long countDailyActive(
+            @ApiParam(value = "行为类型", example = "LEARN") @RequestParam(value = "type", defaultValue = "ALL") ActivityType type,
+            @ApiParam(value = "日期", example = "2023-01-01") @RequestParam("date")
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate date) {
+        return activityService.countDailyActive(type, date);
+    }
+
+    @GetMapping("/range")
+    @ApiOperation("查询日期范围内去重的活跃用户数，可用于周活、月活")
+    public Long countActive(
+            @ApiParam(value = "行为类型", example = "LEARN") @RequestParam(value = "type", defaultValue = "ALL") ActivityType type,
+            @ApiParam(value = "开始日期", example = "2023-01-01") @RequestParam("begin")
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+            @ApiParam(value = "结束日期，最多31天", example = "2023-01-31") @RequestParam("end")
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end) {
+        return activityService.countActive(type, begin, end);
+    }
+
+    @GetMapping("/retention")
+    @ApiOperation("查询基准日活跃用户在目标日的留存")
+    public ActivityRetentionVO countRetention(
+            @ApiParam(value = "行为类型", example = "LEARN") @RequestParam(value = "type", defaultValue = "ALL") ActivityType type,
+            @ApiParam(value = "基准日期", example = "2023-01-01") @RequestParam("cohortDate")
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate cohortDate,
+            @ApiParam(value = "目标日期", example = "2023-01-08") @RequestParam("date")
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate date) {
+        return activityService.countRetention(type, cohortDate, date);
+    }
+}
@@ -0,0 +1,16 @@
+package com.tianji.learning.domain.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+@Data
+@ApiModel(description = "活跃用户留存")
+public class ActivityRetentionVO {
+    @ApiModelProperty("基准日的活跃用户数")
+    private Long cohortUsers;
+    @ApiModelProperty("基准日活跃且在目标日仍活跃的用户数")
+    private Long retainedUsers;
+    @ApiModelProperty("留存率，保留4位小数")
+    private Double retentionRate;
+}
@@ -0,0 +1,21 @@
+package com.tianji.learning.domain.vo;
+
+import com.tianji.api.dto.leanring.LearningRecordDTO;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@ApiModel(description = "学习记录增量同步结果")
+public class LearningRecordDeltaVO {
+    @ApiModelProperty("课表id")
+    private Long id;
+    @ApiModelProperty("最近学习的小节id")
+    private Long latestSectionId;
+    @ApiModelProperty("本次同步的时间戳，下次同步时作为since参数传入")
+    private Long syncTime;
+    @ApiModelProperty("since之后变化的学习记录，包含还未持久化的播放进度")
+    private List<LearningRecordDTO> records;
+}
@@ -0,0 +1,24 @@
+package com.tianji.learning.domain.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+@Data
+@ApiModel(description = "签到统计")
+public class SignStatsVO {
+    @ApiModelProperty("月份，格式：yyyyMM")
+    private String month;
+    @ApiModelProperty("统计的天数，当月为1号到今天，历史月份为整月")
+    private Integer days;
+    @ApiModelProperty("签到日历，二进制第0位代表1号，第n位代表n+1号，1代表已签到")
+    private Integer signMask;
+    @ApiModelProperty("签到总天数")
+    private Integer signCount;
+    @ApiModelProperty("首次签到的日期，未签到为null")
+    private Integer firstSignDay;
+    @ApiModelProperty("截止统计最后一天的连续签到天数，包含之前月份的连续签到")
+    private Integer currentStreak;
+    @ApiModelProperty("本月最长连续签到天数")
+    private Integer longestStreak;
+}
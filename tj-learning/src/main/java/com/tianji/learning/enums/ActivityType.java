@@ -0,0 +1,22 @@
+package com.tianji.learning.enums;
+
+import lombok.Getter;
+
+/**
+ * 用户活跃行为类型，每种类型每天一个位图
+ */
+@Getter
+public enum ActivityType {
+    ALL("all", "任意行为"),
+    LEARN("learn", "学习"),
+    SIGN("sign", "签到"),
+    QA("qa", "互动问答"),
+    ;
+    private final String key;
+    private final String desc;
+
+    ActivityType(String key, String desc) {
+        this.key = key;
+        this.desc = desc;
+    }
+}
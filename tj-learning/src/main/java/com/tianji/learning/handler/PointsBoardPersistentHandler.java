@@ -2,28 +2,39 @@ package com.tianji.learning.handler;
 
 import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.DateUtils;
+import com.tianji.common.utils.StringUtils;
+import com.tianji.learning.cache.PointsBoardCache;
+import com.tianji.learning.config.LearningProperties;
 import com.tianji.learning.constants.RedisConstants;
 import com.tianji.learning.domain.po.PointsBoard;
+import com.tianji.learning.mapper.PointsBoardMapper;
 import com.tianji.learning.service.IPointsBoardSeasonService;
 import com.tianji.learning.service.IPointsBoardService;
 import com.tianji.learning.task.TableInfoContext;
 import com.xxl.job.core.context.XxlJobHelper;
 import com.xxl.job.core.handler.annotation.XxlJob;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static com.tianji.learning.constants.LearningConstants.POINTS_BOARD_TABLE_PREFIX;
 
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class PointsBoardPersistentHandler {
     private final IPointsBoardSeasonService seasonService;
     private final IPointsBoardService pointsBoardService;
+    private final PointsBoardMapper pointsBoardMapper;
     private final StringRedisTemplate redisTemplate;
+    private final LearningProperties properties;
+    private final PointsBoardCache boardCache;
 
     // @Scheduled(cron = "0 0 3 1 * ?") // 每月1号，凌晨3点执行
     @XxlJob("createTableJob")
@@ -44,36 +55,77 @@ public class PointsBoardPersistentHandler {
         LocalDateTime time = LocalDateTime.now().minusMonths(1);
         // 查询赛季信息
         Integer season = seasonService.querySeasonByTime(time);
-        // 将动态表名存入ThreadLocal
-        TableInfoContext.setInfo(POINTS_BOARD_TABLE_PREFIX + season);
-        // 查询榜单数据
-        String key = RedisConstants.POINTS_BOARD_KEY_PREFIX + time.format(DateUtils.POINTS_BOARD_SUFFIX_FORMATTER);
+        if (season == null) {
+            return;
+        }
+        String suffix = time.format(DateUtils.POINTS_BOARD_SUFFIX_FORMATTER);
+        String key = RedisConstants.POINTS_BOARD_KEY_PREFIX + suffix;
+        // 分片信息，榜单按chunkSize分块，第n块由 n % total 的分片处理
         int index = XxlJobHelper.getShardIndex();
         int total = XxlJobHelper.getShardTotal();
-        int pageNo = index + 1; // 起始页，就是分片序号+1
-        int pageSize = 10;
-        while (true) {
-            List<PointsBoard> boardList = pointsBoardService.queryCurrentBoardList(key, pageNo, pageSize);
-            if (CollUtils.isEmpty(boardList)) {
-                break;
+        LearningProperties.BoardArchive config = properties.getBoardArchive();
+        int chunkSize = config.getChunkSize();
+        // 读取本分片的归档进度，从上次中断的块继续
+        String checkpointKey = RedisConstants.POINTS_BOARD_ARCHIVE_KEY_PREFIX + suffix;
+        String checkpointField = index + "/" + total;
+        int chunk = readCheckpoint(checkpointKey, checkpointField, index);
+        if (chunk != index) {
+            XxlJobHelper.log("赛季{}榜单分片{}从第{}块继续归档", season, checkpointField, chunk);
+        }
+        // 重新归档，删除赛季快照，归档结束后再删除一次，避免归档期间读到不完整的数据
+        boardCache.invalidateSeason(season.longValue());
+        // 将动态表名存入ThreadLocal
+        TableInfoContext.setInfo(POINTS_BOARD_TABLE_PREFIX + season);
+        long start = System.nanoTime();
+        long rows = 0;
+        try {
+            while (true) {
+                // 1.读取一整块榜单数据
+                List<PointsBoard> boardList = pointsBoardService.queryCurrentBoardList(key, chunk + 1, chunkSize);
+                if (CollUtils.isEmpty(boardList)) {
+                    break;
+                }
+                // 2.多行insert写入数据库，名次作为id
+                boardList.forEach(b -> {
+                    b.setId(b.getRank().longValue());
+                    b.setRank(null);
+                });
+                for (List<PointsBoard> batch : CollUtils.split(boardList, config.getInsertBatchSize())) {
+                    pointsBoardMapper.insertOrUpdateBatch(batch);
+                }
+                rows += boardList.size();
+                // 3.整块写入成功后记录进度
+                chunk += total;
+                redisTemplate.opsForHash().put(checkpointKey, checkpointField, String.valueOf(chunk));
+                redisTemplate.expire(checkpointKey, Duration.ofDays(config.getCheckpointTtlDays()));
+                if (boardList.size() < chunkSize) {
+                    break;
+                }
             }
-            // 持久化到数据库
-            boardList.forEach(b -> {
-                b.setId(b.getRank().longValue());
-                b.setRank(null);
-            });
-            pointsBoardService.saveBatch(boardList);
-            pageNo += total;
+        } finally {
+            TableInfoContext.remove();
+            boardCache.invalidateSeason(season.longValue());
         }
-        TableInfoContext.remove();
+        long millis = Math.max(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), 1);
+        String msg = StringUtils.format("赛季{}榜单分片{}归档完成，写入{}条，耗时{}ms，{}条/秒",
+                season, checkpointField, rows, millis, rows * 1000 / millis);
+        XxlJobHelper.log(msg);
+        log.info(msg);
+    }
+
+    private int readCheckpoint(String key, String field, int defaultChunk) {
+        Object chunk = redisTemplate.opsForHash().get(key, field);
+        return chunk == null ? defaultChunk : Integer.parseInt(chunk.toString());
     }
 
     @XxlJob("clearPointsBoardFromRedis")
     public void clearPointsBoardFromRedis() {
         // 获取上月时间
         LocalDateTime time = LocalDateTime.now().minusMonths(1);
-        // 拼接key
-        String key = RedisConstants.POINTS_BOARD_KEY_PREFIX + time.format(DateUtils.POINTS_BOARD_SUFFIX_FORMATTER);
-        redisTemplate.unlink(key);
+        String suffix = time.format(DateUtils.POINTS_BOARD_SUFFIX_FORMATTER);
+        // 榜单和归档进度一起删除
+        redisTemplate.unlink(List.of(
+                RedisConstants.POINTS_BOARD_KEY_PREFIX + suffix,
+                RedisConstants.POINTS_BOARD_ARCHIVE_KEY_PREFIX + suffix));
     }
 }
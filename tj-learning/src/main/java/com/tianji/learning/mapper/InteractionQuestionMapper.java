@@ -2,6 +2,10 @@ package com.tianji.learning.mapper;
 
 import com.tianji.learning.domain.po.InteractionQuestion;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.tianji.api.dto.IdAndNumDTO;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +17,8 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface InteractionQuestionMapper extends BaseMapper<InteractionQuestion> {
 
+    /**
+     * 批量累加问题的回答数，一条update语句，按id加上各自的增量
+     */
+    int incrAnswerTimesBatch(@Param("deltas") List<IdAndNumDTO> deltas);
 }
@@ -2,6 +2,10 @@ package com.tianji.learning.mapper;
 
 import com.tianji.learning.domain.po.InteractionReply;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.tianji.api.dto.IdAndNumDTO;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +17,13 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface InteractionReplyMapper extends BaseMapper<InteractionReply> {
 
+    /**
+     * 批量更新点赞数，一条update语句，按id设置各自的点赞数
+     */
+    int updateLikedTimesBatch(@Param("replies") List<InteractionReply> replies);
+
+    /**
+     * 批量累加回答的评论数，一条update语句，按id加上各自的增量
+     */
+    int incrReplyTimesBatch(@Param("deltas") List<IdAndNumDTO> deltas);
 }
@@ -5,6 +5,8 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 
+import java.util.List;
+
 /**
  * <p>
  * 学生课程表 Mapper 接口
@@ -17,4 +19,11 @@ public interface LearningLessonMapper extends BaseMapper<LearningLesson> {
 
     @Select("select sum(week_freq) from learning_lesson where user_id = #{userId} and plan_status = 1 and status in (0, 1)")
     Integer queryWeekTotalPlan(@Param("userId") Long userId);
+
+    /**
+     * 批量更新课表的最近学习小节和最近学习时间，一条SQL完成
+     * @param lessons 课表，只需要id、latestSectionId和latestLearnTime
+     * @return 影响行数
+     */
+    int updateLatestLearnBatch(@Param("lessons") List<LearningLesson> lessons);
 }
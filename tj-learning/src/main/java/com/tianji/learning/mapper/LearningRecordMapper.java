@@ -21,4 +21,11 @@ public interface LearningRecordMapper extends BaseMapper<LearningRecord> {
     List<IdAndNumDTO> countLearnedSections(@Param("userId") Long userId,
                                            @Param("weekBeginTime") LocalDateTime weekBeginTime,
                                            @Param("weekEndTime") LocalDateTime weekEndTime);
+
+    /**
+     * 批量更新学习记录的播放进度，一条SQL完成
+     * @param records 学习记录，只需要id和moment
+     * @return 影响行数
+     */
+    int updateMomentBatch(@Param("records") List<LearningRecord> records);
 }
@@ -4,6 +4,8 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.tianji.learning.domain.po.PointsBoard;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.List;
+
 /**
  * <p>
  * 学霸天梯榜 Mapper 接口
@@ -15,4 +17,9 @@ import org.apache.ibatis.annotations.Param;
 public interface PointsBoardMapper extends BaseMapper<PointsBoard> {
 
     void createPointsBoardTable(@Param("tableName") String tableName);
+
+    /**
+     * 批量写入榜单，id就是名次，重复写入时覆盖，保证归档任务可以重跑
+     */
+    int insertOrUpdateBatch(@Param("boards") List<PointsBoard> boards);
 }
@@ -25,4 +25,11 @@ public interface PointsRecordMapper extends BaseMapper<PointsRecord> {
 
     @Select("select type, sum(points) as points from points_record ${ew.customSqlSegment} group by type")
     List<PointsRecord> queryUserPointsByDate(@Param(Constants.WRAPPER) QueryWrapper<PointsRecord> wrapper);
+
+    /**
+     * 多行插入积分记录，一条SQL完成
+     * @param records 积分记录
+     * @return 影响行数
+     */
+    int insertBatch(@Param("records") List<PointsRecord> records);
 }
@@ -0,0 +1,34 @@
+package com.tianji.learning.mq;
+
+import com.tianji.common.constants.MqConstants;
+import com.tianji.learning.cache.CourseCache;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * 监听课程上架、下架、完结事件，失效本地课程缓存
+ * 本地缓存每个实例各有一份，因此使用匿名队列，保证每个实例都能收到消息
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CourseChangeListener {
+
+    private final CourseCache courseCache;
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue,
+            exchange = @Exchange(name = MqConstants.Exchange.COURSE_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = {MqConstants.Key.COURSE_UP_KEY, MqConstants.Key.COURSE_DOWN_KEY, MqConstants.Key.COURSE_EXPIRE_KEY}
+    ))
+    public void listenCourseChange(Long courseId) {
+        log.debug("监听到课程{}状态变更，清理课程缓存", courseId);
+        courseCache.invalidate(courseId);
+    }
+}
@@ -1,32 +1,58 @@
 package com.tianji.learning.mq;
 
 import com.tianji.common.constants.MqConstants;
-import com.tianji.common.utils.UserContext;
+import com.tianji.learning.enums.ActivityType;
 import com.tianji.learning.enums.PointsRecordType;
 import com.tianji.learning.mq.message.SignInMessage;
 import com.tianji.learning.service.IPointsRecordService;
+import com.tianji.learning.service.IUserActivityService;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.Exchange;
 import org.springframework.amqp.rabbit.annotation.Queue;
 import org.springframework.amqp.rabbit.annotation.QueueBinding;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.retry.MessageRecoverer;
+import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.stereotype.Component;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 积分消息监听器，使用批量消费，一批消息按用户合并积分后统一处理。
+ * 积分按消息id去重，失败时有限次重试，仍失败则整批投递到错误队列，重复投递或重放也不会重复发放
+ */
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class LearningPointsListener {
 
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_INTERVAL_MILLIS = 1000;
+
     private final IPointsRecordService recordService;
+    private final IUserActivityService activityService;
+    private final MessageConverter messageConverter;
+    private final MessageRecoverer messageRecoverer;
 
     // 监听新增互动问答事件
     @RabbitListener(bindings = @QueueBinding(
             value = @Queue(name = "qa.points.queue", durable = "true"),
             exchange = @Exchange(name = MqConstants.Exchange.LEARNING_EXCHANGE, type = ExchangeTypes.TOPIC),
             key = MqConstants.Key.WRITE_REPLY
-    ))
-    public void listenWriteReplyMessage(Long userId) {
-        recordService.addPointsRecord(userId, 5, PointsRecordType.QA);
+    ), containerFactory = "pointsBatchContainerFactory")
+    public void listenWriteReplyMessage(List<Message> messages) {
+        Map<Long, Map<String, Integer>> userPoints = sumPoints(messages, 5);
+        if (grantPoints(messages, userPoints, PointsRecordType.QA)) {
+            // 记录今日问答活跃
+            activityService.markActive(ActivityType.QA, userPoints.keySet());
+        }
     }
 
     // 监听签到事件
@@ -34,9 +60,23 @@ public class LearningPointsListener {
             value = @Queue(name = "sign.points.queue", durable = "true"),
             exchange = @Exchange(name = MqConstants.Exchange.LEARNING_EXCHANGE, type = ExchangeTypes.TOPIC),
             key = MqConstants.Key.SIGN_IN
-    ))
-    public void listenSignInMessage(SignInMessage message) {
-        recordService.addPointsRecord(message.getUserId(), message.getPoints(), PointsRecordType.SIGN);
+    ), containerFactory = "pointsBatchContainerFactory")
+    public void listenSignInMessage(List<Message> messages) {
+        Map<Long, Map<String, Integer>> userPoints = new HashMap<>(messages.size());
+        for (Message m : messages) {
+            Object payload = messageConverter.fromMessage(m);
+            if (!(payload instanceof SignInMessage)) {
+                log.error("接收到签到积分消息有误：{}", payload);
+                continue;
+            }
+            SignInMessage message = (SignInMessage) payload;
+            if (message.getUserId() == null || message.getPoints() == null) {
+                log.error("接收到签到积分消息有误：{}", message);
+                continue;
+            }
+            addPoints(userPoints, m, message.getUserId(), message.getPoints());
+        }
+        grantPoints(messages, userPoints, PointsRecordType.SIGN);
     }
 
     // 监听学习事件
@@ -44,8 +84,60 @@ public class LearningPointsListener {
             value = @Queue(name = "learning.points.queue", durable = "true"),
             exchange = @Exchange(name = MqConstants.Exchange.LEARNING_EXCHANGE, type = ExchangeTypes.TOPIC),
             key = MqConstants.Key.LEARN_SECTION
-    ))
-    public void listenLearnSectionMessage(Long userId) {
-        recordService.addPointsRecord(userId, 10, PointsRecordType.LEARNING);
+    ), containerFactory = "pointsBatchContainerFactory")
+    public void listenLearnSectionMessage(List<Message> messages) {
+        grantPoints(messages, sumPoints(messages, 10), PointsRecordType.LEARNING);
+    }
+
+    /**
+     * 消息体是用户id，每条消息固定积分
+     */
+    private Map<Long, Map<String, Integer>> sumPoints(List<Message> messages, int pointsPerMessage) {
+        Map<Long, Map<String, Integer>> userPoints = new HashMap<>(messages.size());
+        for (Message m : messages) {
+            Object userId = messageConverter.fromMessage(m);
+            if (!(userId instanceof Number)) {
+                log.error("接收到积分消息有误：{}", userId);
+                continue;
+            }
+            addPoints(userPoints, m, ((Number) userId).longValue(), pointsPerMessage);
+        }
+        return userPoints;
+    }
+
+    private void addPoints(Map<Long, Map<String, Integer>> userPoints, Message message, Long userId, Integer points) {
+        String messageId = message.getMessageProperties().getMessageId();
+        if (messageId == null) {
+            // 没有消息id无法去重，按新消息处理
+            messageId = UUID.randomUUID().toString();
+        }
+        userPoints.computeIfAbsent(userId, k -> new HashMap<>()).merge(messageId, points, Integer::sum);
+    }
+
+    /**
+     * 发放积分，失败时有限次重试，仍失败则整批投递到错误队列，不再重新入队
+     * @return 是否发放成功
+     */
+    private boolean grantPoints(List<Message> messages, Map<Long, Map<String, Integer>> userPoints,
+                                PointsRecordType type) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                recordService.addPointsRecords(userPoints, type);
+                return true;
+            } catch (RuntimeException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    log.error("发放{}积分失败，{}条消息投递到错误队列", type.getDesc(), messages.size(), e);
+                    messages.forEach(m -> messageRecoverer.recover(m, e));
+                    return false;
+                }
+                log.warn("发放{}积分失败，第{}次重试", type.getDesc(), attempt, e);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(RETRY_INTERVAL_MILLIS * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -2,8 +2,7 @@ package com.tianji.learning.mq;
 
 import com.tianji.api.dto.remark.LikedTimesDTO;
 import com.tianji.common.constants.MqConstants;
-import com.tianji.learning.domain.po.InteractionReply;
-import com.tianji.learning.service.IInteractionReplyService;
+import com.tianji.learning.task.ReplyLikedTimesFlushTask;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.ExchangeTypes;
@@ -13,14 +12,13 @@ import org.springframework.amqp.rabbit.annotation.QueueBinding;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
 import java.util.List;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class LikeTimesChangeListener {
-    private final IInteractionReplyService replyService;
+    private final ReplyLikedTimesFlushTask likedTimesFlushTask;
 
     @RabbitListener(bindings = @QueueBinding(
             value = @Queue(name = "qa.liked.times.queue", durable = "true"),
@@ -30,13 +28,7 @@ public class LikeTimesChangeListener {
     )
     public void listenReplyLikedTimesChange(List<LikedTimesDTO> likedTimesDTOS) {
         log.debug("监听到回答或评论的点赞数变更");
-        List<InteractionReply> list = new ArrayList<>(likedTimesDTOS.size());
-        for (LikedTimesDTO dto : likedTimesDTOS) {
-            InteractionReply reply = new InteractionReply();
-            reply.setId(dto.getBizId());
-            reply.setLikedTimes(dto.getLikedTimes());
-            list.add(reply);
-        }
-        replyService.updateBatchById(list);
+        // 合并到当前窗口，由定时任务批量写入
+        likedTimesFlushTask.merge(likedTimesDTOS);
     }
 }
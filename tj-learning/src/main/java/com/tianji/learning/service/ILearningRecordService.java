@@ -2,9 +2,12 @@ package com.tianji.learning.service;
 
 import com.tianji.api.dto.leanring.LearningLessonDTO;
 import com.tianji.learning.domain.dto.LearningRecordFormDTO;
+import com.tianji.learning.domain.vo.LearningRecordDeltaVO;
 import com.tianji.learning.domain.po.LearningRecord;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  * 学习记录表 服务类
@@ -22,9 +25,23 @@ public interface ILearningRecordService extends IService<LearningRecord> {
      */
     LearningLessonDTO queryLearningRecordByCourse(Long courseId);
 
+    /**
+     * 增量查询指定课程的学习记录
+     * @param courseId 课程id
+     * @param since 上次同步的时间戳，为空则返回全部
+     * @return
+     */
+    LearningRecordDeltaVO queryLearningRecordDelta(Long courseId, Long since);
+
     /**
      * 提交学习记录
      * @param formDTO
      */
     void addLearningRecord(LearningRecordFormDTO formDTO);
+
+    /**
+     * 批量提交学习记录，同一小节只保留最后提交的一条
+     * @param formDTOs
+     */
+    void addLearningRecords(List<LearningRecordFormDTO> formDTOs);
 }
@@ -6,6 +6,7 @@ import com.tianji.learning.domain.vo.PointsStatisticsVO;
 import com.tianji.learning.enums.PointsRecordType;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * <p>
@@ -19,5 +20,19 @@ public interface IPointsRecordService extends IService<PointsRecord> {
 
     void addPointsRecord(Long userId, Integer points, PointsRecordType pointsRecordType);
 
+    /**
+     * 批量新增同一类型的积分记录，按消息id去重，同一消息重复处理只发放一次
+     * @param userPoints 用户id与本批次各消息积分的映射，内层key是消息id
+     * @param pointsRecordType 积分类型
+     */
+    void addPointsRecords(Map<Long, Map<String, Integer>> userPoints, PointsRecordType pointsRecordType);
+
     List<PointsStatisticsVO> queryMyPointsToday();
+
+    /**
+     * 批量持久化Redis中待写入的积分记录
+     * @param maxSize 单次最多处理的记录数
+     * @return 本次取出的记录数
+     */
+    int persistPendingRecords(int maxSize);
 }
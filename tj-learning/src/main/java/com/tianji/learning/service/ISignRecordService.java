@@ -1,10 +1,13 @@
 package com.tianji.learning.service;
 
 import com.tianji.learning.domain.vo.SignResultVO;
+import com.tianji.learning.domain.vo.SignStatsVO;
 
 public interface ISignRecordService {
 
     SignResultVO addSignRecords();
 
     Byte[] querySignRecords();
+
+    SignStatsVO querySignStats(String month);
 }
\ No newline at end of file
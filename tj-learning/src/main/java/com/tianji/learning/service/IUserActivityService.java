@@ -0,0 +1,23 @@
+package com.tianji.learning.service;
+
+import com.tianji.learning.domain.vo.ActivityRetentionVO;
+import com.tianji.learning.enums.ActivityType;
+
+import java.time.LocalDate;
+import java.util.Collection;
+
+/**
+ * 用户活跃统计，基于Redis位图
+ */
+public interface IUserActivityService {
+
+    void markActive(ActivityType type, Long userId);
+
+    void markActive(ActivityType type, Collection<Long> userIds);
+
+    long countDailyActive(ActivityType type, LocalDate date);
+
+    long countActive(ActivityType type, LocalDate begin, LocalDate end);
+
+    ActivityRetentionVO countRetention(ActivityType type, LocalDate cohortDate, LocalDate date);
+}
@@ -9,6 +9,7 @@ import com.tianji.api.client.course.CourseClient;
 import com.tianji.api.client.search.SearchClient;
 import com.tianji.api.client.user.UserClient;
 import com.tianji.api.dto.course.CataSimpleInfoDTO;
+import com.tianji.api.dto.course.CategoryBasicDTO;
 import com.tianji.api.dto.course.CourseFullInfoDTO;
 import com.tianji.api.dto.course.CourseSimpleInfoDTO;
 import com.tianji.api.dto.user.UserDTO;
@@ -19,6 +20,7 @@ import com.tianji.common.utils.BeanUtils;
 import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.StringUtils;
 import com.tianji.common.utils.UserContext;
+import com.tianji.learning.cache.InteractionCountCache;
 import com.tianji.learning.domain.dto.QuestionFormDTO;
 import com.tianji.learning.domain.po.InteractionQuestion;
 import com.tianji.learning.domain.po.InteractionReply;
@@ -30,6 +32,7 @@ import com.tianji.learning.enums.QuestionStatus;
 import com.tianji.learning.mapper.InteractionQuestionMapper;
 import com.tianji.learning.mapper.InteractionReplyMapper;
 import com.tianji.learning.service.IInteractionQuestionService;
+import com.tianji.learning.utils.ParallelEnricher;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
@@ -37,6 +40,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -57,6 +61,8 @@ public class InteractionQuestionServiceImpl extends ServiceImpl<InteractionQuest
     private final CourseClient courseClient;
     private final CatalogueClient catalogueClient;
     private final CategoryCache categoryCache;
+    private final ParallelEnricher enricher;
+    private final InteractionCountCache countCache;
 
     @Override
     public void saveQuestion(QuestionFormDTO questionDTO) {
@@ -129,6 +135,8 @@ public class InteractionQuestionServiceImpl extends ServiceImpl<InteractionQuest
             List<UserDTO> users = userClient.queryUserByIds(userIds);
             userMap = users.stream().collect(Collectors.toMap(UserDTO::getId, u -> u));
         }
+        // 加上未写回数据库的回答数
+        countCache.fillAnswerTimes(records);
         // 4.封装VO
         List<QuestionVO> voList = new ArrayList<>(records.size());
         for (InteractionQuestion q : records) {
@@ -167,6 +175,7 @@ public class InteractionQuestionServiceImpl extends ServiceImpl<InteractionQuest
         if (!question.getAnonymity()) {
             userDTO = userClient.queryUserById(question.getUserId());
         }
+        countCache.fillAnswerTimes(List.of(question));
         QuestionVO vo = BeanUtils.copyBean(question, QuestionVO.class);
         if (userDTO != null) {
             vo.setUserId(userDTO.getId());
@@ -232,24 +241,35 @@ public class InteractionQuestionServiceImpl extends ServiceImpl<InteractionQuest
             cataIds.add(q.getChapterId());
             cataIds.add(q.getSectionId());
         }
-        // 3.2.根据id查询用户
-        List<UserDTO> users = userClient.queryUserByIds(userIds);
-        Map<Long, UserDTO> userMap = new HashMap<>(users.size());
-        if (CollUtils.isNotEmpty(users)) {
-            userMap = users.stream().collect(Collectors.toMap(UserDTO::getId, u -> u));
-        }
-        // 3.3.根据id查询课程
-        List<CourseSimpleInfoDTO> courses = courseClient.getSimpleInfoList(cIds);
-        Map<Long, CourseSimpleInfoDTO> courseMap = new HashMap<>(courses.size());
-        if (CollUtils.isNotEmpty(courses)) {
-            courseMap = courses.stream().collect(Collectors.toMap(CourseSimpleInfoDTO::getId, c -> c));
-        }
-        // 3.4.根据id查询章节
-        List<CataSimpleInfoDTO> catas = catalogueClient.batchQueryCatalogue(cataIds);
-        Map<Long, String> cataMap = new HashMap<>(catas.size());
-        if (CollUtils.isNotEmpty(catas)) {
-            cataMap = catas.stream().collect(Collectors.toMap(CataSimpleInfoDTO::getId, CataSimpleInfoDTO::getName));
-        }
+        // 3.2.并行查询用户、课程、分类、章节，互不依赖，超时的查询降级为空
+        CompletableFuture<Map<Long, UserDTO>> userFuture = enricher.supply("用户信息", () -> {
+            List<UserDTO> users = userClient.queryUserByIds(userIds);
+            if (CollUtils.isEmpty(users)) {
+                return null;
+            }
+            return users.stream().collect(Collectors.toMap(UserDTO::getId, u -> u));
+        }, CollUtils.emptyMap());
+        CompletableFuture<Map<Long, CourseSimpleInfoDTO>> courseFuture = enricher.supply("课程信息", () -> {
+            List<CourseSimpleInfoDTO> courses = courseClient.getSimpleInfoList(cIds);
+            if (CollUtils.isEmpty(courses)) {
+                return null;
+            }
+            return courses.stream().collect(Collectors.toMap(CourseSimpleInfoDTO::getId, c -> c));
+        }, CollUtils.emptyMap());
+        CompletableFuture<Map<Long, CategoryBasicDTO>> categoryFuture = enricher.supply(
+                "分类信息", categoryCache::getCategoryMap, CollUtils.emptyMap());
+        CompletableFuture<Map<Long, CataSimpleInfoDTO>> cataFuture = enricher.supply("章节信息", () -> {
+            List<CataSimpleInfoDTO> catas = catalogueClient.batchQueryCatalogue(cataIds);
+            if (CollUtils.isEmpty(catas)) {
+                return null;
+            }
+            return catas.stream().collect(Collectors.toMap(CataSimpleInfoDTO::getId, c -> c));
+        }, CollUtils.emptyMap());
+        Map<Long, UserDTO> userMap = userFuture.join();
+        Map<Long, CourseSimpleInfoDTO> courseMap = courseFuture.join();
+        Map<Long, CategoryBasicDTO> categoryMap = categoryFuture.join();
+        Map<Long, CataSimpleInfoDTO> cataMap = cataFuture.join();
+        countCache.fillAnswerTimes(records);
         // 4.封装VO
         List<QuestionAdminVO> voList = new ArrayList<>(records.size());
         for (InteractionQuestion q : records) {
@@ -264,15 +284,31 @@ public class InteractionQuestionServiceImpl extends ServiceImpl<InteractionQuest
             CourseSimpleInfoDTO course = courseMap.get(q.getCourseId());
             if (course != null) {
                 vo.setCourseName(course.getName());
-                vo.setCategoryName(categoryCache.getCategoryNames(course.getCategoryIds()));
+                vo.setCategoryName(joinCategoryNames(categoryMap, course.getCategoryIds()));
             }
             // 章节信息
-            vo.setChapterName(cataMap.getOrDefault(q.getChapterId(), ""));
-            vo.setSectionName(cataMap.getOrDefault(q.getSectionId(), ""));
+            vo.setChapterName(cataNameOf(cataMap, q.getChapterId()));
+            vo.setSectionName(cataNameOf(cataMap, q.getSectionId()));
         }
         return PageDTO.of(page, voList);
     }
 
+    private String joinCategoryNames(Map<Long, CategoryBasicDTO> categoryMap, List<Long> categoryIds) {
+        if (CollUtils.isEmpty(categoryIds)) {
+            return "";
+        }
+        return categoryIds.stream()
+                .map(categoryMap::get)
+                .filter(Objects::nonNull)
+                .map(CategoryBasicDTO::getName)
+                .collect(Collectors.joining("/"));
+    }
+
+    private String cataNameOf(Map<Long, CataSimpleInfoDTO> cataMap, Long id) {
+        CataSimpleInfoDTO cata = cataMap.get(id);
+        return cata == null || cata.getName() == null ? "" : cata.getName();
+    }
+
     @Override
     public void hiddenQuestion(Long id, Boolean hidden) {
         InteractionQuestion question = new InteractionQuestion();
@@ -288,6 +324,7 @@ public class InteractionQuestionServiceImpl extends ServiceImpl<InteractionQuest
         if (question == null) {
             return null;
         }
+        countCache.fillAnswerTimes(List.of(question));
         QuestionAdminVO vo = BeanUtils.copyBean(question, QuestionAdminVO.class);
         // 提问者信息
         UserDTO user = userClient.queryUserById(question.getUserId());
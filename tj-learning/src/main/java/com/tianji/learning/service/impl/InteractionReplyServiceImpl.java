@@ -2,6 +2,7 @@ package com.tianji.learning.service.impl;
 
 import com.baomidou.mybatisplus.core.metadata.OrderItem;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.tianji.api.cache.LikedTimesCache;
 import com.tianji.api.client.remark.RemarkClient;
 import com.tianji.api.client.user.UserClient;
 import com.tianji.api.dto.user.UserDTO;
@@ -13,6 +14,7 @@ import com.tianji.common.exceptions.BadRequestException;
 import com.tianji.common.utils.BeanUtils;
 import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.UserContext;
+import com.tianji.learning.cache.InteractionCountCache;
 import com.tianji.learning.domain.dto.ReplyDTO;
 import com.tianji.learning.domain.po.InteractionQuestion;
 import com.tianji.learning.domain.po.InteractionReply;
@@ -43,10 +45,17 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class InteractionReplyServiceImpl extends ServiceImpl<InteractionReplyMapper, InteractionReply> implements IInteractionReplyService {
 
+    /**
+     * 回答和评论在点赞服务中的业务类型
+     */
+    private static final String LIKED_BIZ_TYPE = "QA";
+
     private final IInteractionQuestionService questionService;
     private final UserClient userClient;
     private final RemarkClient remarkClient;
+    private final LikedTimesCache likedTimesCache;
     private final RabbitMqHelper mqHelper;
+    private final InteractionCountCache countCache;
 
     @Override
     public void saveReply(ReplyDTO replyDTO) {
@@ -57,19 +66,20 @@ public class InteractionReplyServiceImpl extends ServiceImpl<InteractionReplyMap
         save(reply);
         // 判断是回答或评论
         boolean isAnswer = replyDTO.getAnswerId() == null;
-        if (!isAnswer) {
-            lambdaUpdate()
-                    .setSql("reply_times = reply_times + 1")
-                    .eq(InteractionReply::getId, replyDTO.getAnswerId())
-                    .update();
+        // 回答数、评论数在Redis中累加，由定时任务写回数据库
+        if (isAnswer) {
+            countCache.incrAnswerTimes(replyDTO.getQuestionId());
+        } else {
+            countCache.incrReplyTimes(replyDTO.getAnswerId());
         }
         // 更新问题表
-        questionService.lambdaUpdate()
-                .set(isAnswer, InteractionQuestion::getLatestAnswerId, reply.getAnswerId())
-                .setSql(isAnswer, "answer_times = answer_times + 1")
-                .set(replyDTO.getIsStudent(), InteractionQuestion::getStatus, QuestionStatus.UN_CHECK.getValue())
-                .eq(InteractionQuestion::getId, replyDTO.getQuestionId())
-                .update();
+        if (isAnswer || replyDTO.getIsStudent()) {
+            questionService.lambdaUpdate()
+                    .set(isAnswer, InteractionQuestion::getLatestAnswerId, reply.getAnswerId())
+                    .set(replyDTO.getIsStudent(), InteractionQuestion::getStatus, QuestionStatus.UN_CHECK.getValue())
+                    .eq(InteractionQuestion::getId, replyDTO.getQuestionId())
+                    .update();
+        }
         if (replyDTO.getIsStudent()) {
             mqHelper.send(
                     MqConstants.Exchange.LEARNING_EXCHANGE,
@@ -100,6 +110,8 @@ public class InteractionReplyServiceImpl extends ServiceImpl<InteractionReplyMap
         if (CollUtils.isEmpty(records)) {
             return PageDTO.empty(page);
         }
+        // 加上未写回数据库的评论数
+        countCache.fillReplyTimes(records);
         // 数据处理 提问者信息 目标回复 回复用户
         Set<Long> userIds = new HashSet<>();
         Set<Long> answerIds = new HashSet<>();
@@ -129,7 +141,10 @@ public class InteractionReplyServiceImpl extends ServiceImpl<InteractionReplyMap
             userMap = users.stream().collect(Collectors.toMap(UserDTO::getId, u -> u));
         }
         // 查询用户点赞状态
-        Set<Long> bizLiked = remarkClient.isBizLiked(answerIds);
+        Set<Long> bizLiked = remarkClient.isBizLiked(LIKED_BIZ_TYPE, answerIds);
+        // 查询实时点赞数，数据库中的点赞数是定时同步的
+        Map<Long, Integer> likedTimes = likedTimesCache.getLikedTimes(LIKED_BIZ_TYPE,
+                records.stream().map(InteractionReply::getId).collect(Collectors.toList()));
         // 处理VO
         List<ReplyVO> voList = new ArrayList<>(records.size());
         for (InteractionReply r : records) {
@@ -152,6 +167,7 @@ public class InteractionReplyServiceImpl extends ServiceImpl<InteractionReplyMap
                 }
             }
             vo.setLiked(bizLiked.contains(r.getId()));
+            vo.setLikedTimes(likedTimes.getOrDefault(r.getId(), r.getLikedTimes()));
         }
         return PageDTO.of(page, voList);
     }
@@ -7,7 +7,6 @@ import com.tianji.api.client.course.CatalogueClient;
 import com.tianji.api.client.course.CourseClient;
 import com.tianji.api.dto.IdAndNumDTO;
 import com.tianji.api.dto.course.CataSimpleInfoDTO;
-import com.tianji.api.dto.course.CourseFullInfoDTO;
 import com.tianji.api.dto.course.CourseSimpleInfoDTO;
 import com.tianji.common.domain.dto.PageDTO;
 import com.tianji.common.domain.query.PageQuery;
@@ -17,8 +16,10 @@ import com.tianji.common.utils.BeanUtils;
 import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.DateUtils;
 import com.tianji.common.utils.UserContext;
+import com.tianji.learning.cache.CourseCache;
+import com.tianji.learning.cache.LearningPlanCache;
 import com.tianji.learning.domain.po.LearningLesson;
-import com.tianji.learning.domain.po.LearningRecord;
+import com.tianji.learning.domain.po.PointsRecord;
 import com.tianji.learning.domain.vo.LearningLessonVO;
 import com.tianji.learning.domain.vo.LearningPlanPageVO;
 import com.tianji.learning.domain.vo.LearningPlanVO;
@@ -26,6 +27,7 @@ import com.tianji.learning.enums.LessonStatus;
 import com.tianji.learning.enums.PlanStatus;
 import com.tianji.learning.mapper.LearningLessonMapper;
 import com.tianji.learning.mapper.LearningRecordMapper;
+import com.tianji.learning.mapper.PointsRecordMapper;
 import com.tianji.learning.service.ILearningLessonService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.tianji.learning.service.ILearningRecordService;
@@ -58,8 +60,11 @@ import java.util.stream.Collectors;
 public class LearningLessonServiceImpl extends ServiceImpl<LearningLessonMapper, LearningLesson> implements ILearningLessonService {
 
     private final CourseClient courseClient;
+    private final CourseCache courseCache;
     private final CatalogueClient catalogueClient;
     private final LearningRecordMapper recordMapper;
+    private final PointsRecordMapper pointsRecordMapper;
+    private final LearningPlanCache planCache;
 
     @Override
     @Transactional
@@ -96,11 +101,10 @@ public class LearningLessonServiceImpl extends ServiceImpl<LearningLessonMapper,
 
         // 根据courseId查询课程信息
         List<Long> courseIds = lessonList.stream().map(LearningLesson::getCourseId).collect(Collectors.toList());
-        List<CourseSimpleInfoDTO> list = courseClient.getSimpleInfoList(courseIds);
-        if (CollUtils.isEmpty(list)) {
+        Map<Long, CourseSimpleInfoDTO> courseMap = courseCache.getCourses(courseIds);
+        if (CollUtils.isEmpty(courseMap)) {
             throw new DbException("课程信息不存在");
         }
-        Map<Long, CourseSimpleInfoDTO> courseMap = list.stream().collect(Collectors.toMap(CourseSimpleInfoDTO::getId, c->c));
 
         // 遍历课表list, 封装learningLessonVO
         List<LearningLessonVO> lessonVOS = new ArrayList<>();
@@ -135,13 +139,13 @@ public class LearningLessonServiceImpl extends ServiceImpl<LearningLessonMapper,
         LearningLessonVO vo = BeanUtils.copyBean(lesson, LearningLessonVO.class);
 
         // 查询课程信息
-        CourseFullInfoDTO courseFullInfo = courseClient.getCourseInfoById(lesson.getCourseId(), false, false);
-        if (courseFullInfo == null) {
+        CourseSimpleInfoDTO course = courseCache.getCourse(lesson.getCourseId());
+        if (course == null) {
             throw new DbException("课程不存在");
         }
-        vo.setCourseName(courseFullInfo.getName());
-        vo.setCourseCoverUrl(courseFullInfo.getCoverUrl());
-        vo.setSections(courseFullInfo.getSectionNum());
+        vo.setCourseName(course.getName());
+        vo.setCourseCoverUrl(course.getCoverUrl());
+        vo.setSections(course.getSectionNum());
 
         // 统计课表中的课程数量 select count(1) from xxx where user_id = #{userId}
         Integer amount = lambdaQuery()
@@ -173,7 +177,7 @@ public class LearningLessonServiceImpl extends ServiceImpl<LearningLessonMapper,
         }
 
         // 根据courseId查询课程信息
-        CourseFullInfoDTO course = courseClient.getCourseInfoById(courseId, false, false);
+        CourseSimpleInfoDTO course = courseCache.getCourse(courseId);
         if (course == null) {
             throw new DbException("课程信息不存在");
         }
@@ -196,8 +200,8 @@ public class LearningLessonServiceImpl extends ServiceImpl<LearningLessonMapper,
         if (lesson == null) {
             return null;
         }
-        CourseFullInfoDTO course = courseClient.getCourseInfoById(courseId, false, false);
-        if (LocalDateTime.now().isAfter(course.getPurchaseEndTime())) {
+        CourseSimpleInfoDTO course = courseCache.getCourse(courseId);
+        if (course == null || LocalDateTime.now().isAfter(course.getPurchaseEndTime())) {
             return null;
         }
         return lesson.getId();
@@ -253,14 +257,18 @@ public class LearningLessonServiceImpl extends ServiceImpl<LearningLessonMapper,
         LocalDateTime weekBeginTime = DateUtils.getWeekBeginTime(now);
         LocalDateTime weekEndTime = DateUtils.getWeekEndTime(now);
 
-        // 查询本周计划统计
+        // 查询本周计划统计，先查Redis，未初始化则从数据库统计
+        LearningPlanCache.WeekPlanStats stats = planCache.get(userId, now);
+        if (stats == null) {
+            // 统计前读取版本号，统计期间有新的增量时不写入缓存
+            String version = planCache.getVersion(userId, now);
+            stats = queryWeekPlanStats(userId, weekBeginTime, weekEndTime);
+            planCache.init(userId, now, version, stats);
+        }
         // -本周已学完小节总数
-        Integer weekFinishedCount = recordMapper.selectCount(new LambdaQueryWrapper<LearningRecord>()
-                .eq(LearningRecord::getFinished, true)
-                .eq(LearningRecord::getUserId, userId)
-                .gt(LearningRecord::getFinishTime, weekBeginTime)
-                .lt(LearningRecord::getFinishTime, weekEndTime));
-        vo.setWeekFinished(weekFinishedCount);
+        vo.setWeekFinished(stats.getFinished());
+        // -本周积分
+        vo.setWeekPoints(stats.getPoints());
         // -本周计划学习小节总数
         Integer weekTotalPlan = getBaseMapper().queryWeekTotalPlan(userId);
         vo.setWeekTotalPlan(weekTotalPlan);
@@ -279,15 +287,13 @@ public class LearningLessonServiceImpl extends ServiceImpl<LearningLessonMapper,
 
         // 2-根据courseId查询课程信息
         List<Long> courseIds = lessonList.stream().map(LearningLesson::getCourseId).collect(Collectors.toList());
-        List<CourseSimpleInfoDTO> courseList = courseClient.getSimpleInfoList(courseIds);
-        if (CollUtils.isEmpty(courseList)) {
+        Map<Long, CourseSimpleInfoDTO> courseMap = courseCache.getCourses(courseIds);
+        if (CollUtils.isEmpty(courseMap)) {
             throw new DbException("课程信息不存在");
         }
-        Map<Long, CourseSimpleInfoDTO> courseMap = courseList.stream().collect(Collectors.toMap(CourseSimpleInfoDTO::getId, c -> c));
 
-        // 3-查询某个课程本周学习的小节数
-        List<IdAndNumDTO> idAndNumList = recordMapper.countLearnedSections(userId, weekBeginTime, weekEndTime);
-        Map<Long, Integer> idAndNumMap = IdAndNumDTO.toMap(idAndNumList);
+        // 3-某个课程本周学习的小节数
+        Map<Long, Integer> idAndNumMap = stats.getLessonFinished();
 
         // 4-把课表list封装到voList
         List<LearningPlanVO> voList = new ArrayList<>();
@@ -308,6 +314,22 @@ public class LearningLessonServiceImpl extends ServiceImpl<LearningLessonMapper,
         return vo.pageInfo(page.getTotal(), page.getPages(), voList);
     }
 
+    private LearningPlanCache.WeekPlanStats queryWeekPlanStats(
+            Long userId, LocalDateTime weekBeginTime, LocalDateTime weekEndTime) {
+        LearningPlanCache.WeekPlanStats stats = new LearningPlanCache.WeekPlanStats();
+        // 1.各课表本周学完的小节数，求和就是本周学完的小节总数
+        List<IdAndNumDTO> idAndNumList = recordMapper.countLearnedSections(userId, weekBeginTime, weekEndTime);
+        Map<Long, Integer> idAndNumMap = IdAndNumDTO.toMap(idAndNumList);
+        stats.getLessonFinished().putAll(idAndNumMap);
+        stats.setFinished(idAndNumMap.values().stream().mapToInt(Integer::intValue).sum());
+        // 2.本周积分
+        Integer points = pointsRecordMapper.queryUserPointsByTypeAndDate(new QueryWrapper<PointsRecord>()
+                .eq("user_id", userId)
+                .between("create_time", weekBeginTime, weekEndTime));
+        stats.setPoints(points == null ? 0 : points);
+        return stats;
+    }
+
     private LambdaQueryWrapper<LearningLesson> buildUserIdAndCourseIdWrapper(Long userId, Long courseId) {
         return new QueryWrapper<LearningLesson>()
                 .lambda()
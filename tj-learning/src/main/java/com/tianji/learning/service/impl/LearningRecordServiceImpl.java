@@ -1,31 +1,42 @@
 package com.tianji.learning.service.impl;
 
-import com.tianji.api.client.course.CourseClient;
-import com.tianji.api.dto.course.CourseFullInfoDTO;
+import com.tianji.api.dto.course.CourseSimpleInfoDTO;
 import com.tianji.api.dto.leanring.LearningLessonDTO;
 import com.tianji.api.dto.leanring.LearningRecordDTO;
 import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
 import com.tianji.common.constants.MqConstants;
+import com.tianji.common.exceptions.BadRequestException;
 import com.tianji.common.exceptions.BizIllegalException;
 import com.tianji.common.exceptions.DbException;
 import com.tianji.common.utils.BeanUtils;
+import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.UserContext;
+import com.tianji.learning.cache.CourseCache;
+import com.tianji.learning.cache.LearningPlanCache;
+import com.tianji.learning.cache.LearningRecordCache;
 import com.tianji.learning.domain.dto.LearningRecordFormDTO;
 import com.tianji.learning.domain.po.LearningLesson;
 import com.tianji.learning.domain.po.LearningRecord;
+import com.tianji.learning.domain.vo.LearningRecordDeltaVO;
+import com.tianji.learning.enums.ActivityType;
 import com.tianji.learning.enums.LessonStatus;
 import com.tianji.learning.enums.SectionType;
 import com.tianji.learning.mapper.LearningRecordMapper;
 import com.tianji.learning.service.ILearningLessonService;
 import com.tianji.learning.service.ILearningRecordService;
+import com.tianji.learning.service.IUserActivityService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.tianji.learning.task.LearningRecordDelayTaskHandler;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.List;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -40,9 +51,16 @@ import java.util.List;
 public class LearningRecordServiceImpl extends ServiceImpl<LearningRecordMapper, LearningRecord> implements ILearningRecordService {
 
     private final ILearningLessonService lessonService;
-    private final CourseClient courseClient;
+    private final CourseCache courseCache;
     private final LearningRecordDelayTaskHandler taskHandler;
+    private final LearningRecordCache recordCache;
+    private final LearningPlanCache planCache;
     private final RabbitMqHelper mqHelper;
+    private final IUserActivityService activityService;
+    /**
+     * 批量提交学习记录的最大条数
+     */
+    private static final int MAX_BATCH_RECORDS = 500;
 
     @Override
     public LearningLessonDTO queryLearningRecordByCourse(Long courseId) {
@@ -64,10 +82,52 @@ public class LearningRecordServiceImpl extends ServiceImpl<LearningRecordMapper,
         return dto;
     }
 
+    @Override
+    public LearningRecordDeltaVO queryLearningRecordDelta(Long courseId, Long since) {
+        Long userId = UserContext.getUser();
+        // 同步时间取查询开始的时间，查询期间变化的记录下次还会返回
+        long syncTime = System.currentTimeMillis();
+        // 1.查询课表
+        LearningLesson lesson = lessonService.queryByUserAndCourseId(userId, courseId);
+        if (lesson == null || lesson.getExpireTime().isBefore(LocalDateTime.now())) {
+            return null;
+        }
+        // 2.查询since之后变化的学习记录，update_time精度是秒，向下取整避免遗漏
+        LocalDateTime sinceTime = since == null ? null :
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(since), ZoneId.systemDefault()).truncatedTo(ChronoUnit.SECONDS);
+        List<LearningRecord> list = lambdaQuery()
+                .eq(LearningRecord::getLessonId, lesson.getId())
+                .ge(sinceTime != null, LearningRecord::getUpdateTime, sinceTime)
+                .list();
+        // 3.合并缓存中还未持久化的播放进度，缓存中的数据更新
+        Map<Long, LearningRecord> recordMap = new LinkedHashMap<>(list.size());
+        for (LearningRecord record : list) {
+            recordMap.put(record.getSectionId(), record);
+        }
+        recordCache.getByLesson(lesson.getId()).forEach((sectionId, cache) -> {
+            LearningRecord record = recordMap.get(sectionId);
+            if (record == null) {
+                recordMap.put(sectionId, cache);
+                return;
+            }
+            record.setMoment(cache.getMoment());
+            record.setFinished(cache.getFinished());
+        });
+        // 4.封装结果
+        LearningRecordDeltaVO vo = new LearningRecordDeltaVO();
+        vo.setId(lesson.getId());
+        vo.setLatestSectionId(lesson.getLatestSectionId());
+        vo.setSyncTime(syncTime);
+        vo.setRecords(BeanUtils.copyList(new ArrayList<>(recordMap.values()), LearningRecordDTO.class));
+        return vo;
+    }
+
     @Override
     @Transactional
     public void addLearningRecord(LearningRecordFormDTO formDTO) {
         Long userId = UserContext.getUser();
+        // 记录今日学习活跃
+        activityService.markActive(ActivityType.LEARN, userId);
         // 处理学习记录
         boolean finished = false;
         if (formDTO.getSectionType() == SectionType.EXAM) {
@@ -84,7 +144,7 @@ public class LearningRecordServiceImpl extends ServiceImpl<LearningRecordMapper,
         }
 
         // 处理课表
-        handleLesson(formDTO);
+        handleLesson(formDTO.getLessonId(), 1, formDTO.getSectionId(), formDTO.getCommitTime());
 
         // 发送mq积分消息
         mqHelper.send(
@@ -110,8 +170,16 @@ public class LearningRecordServiceImpl extends ServiceImpl<LearningRecordMapper,
     }
 
     private boolean handleVideo(Long userId, LearningRecordFormDTO formDTO) {
-        // 查询旧的学习记录
-        LearningRecord old = queryOldRecord(formDTO.getLessonId(), formDTO.getSectionId());
+        // 查询旧的学习记录，缓存命中时，同时把缓存中的播放进度更新为本次提交的值
+        LearningRecord old = recordCache.getAndUpdateMoment(
+                formDTO.getLessonId(), formDTO.getSectionId(), formDTO.getMoment());
+        boolean cached = old != null;
+        if (!cached) {
+            old = lambdaQuery()
+                    .eq(LearningRecord::getLessonId, formDTO.getLessonId())
+                    .eq(LearningRecord::getSectionId, formDTO.getSectionId())
+                    .one();
+        }
         // 判断是否存在
         if (old == null) {
             // 不存在 新增
@@ -135,7 +203,12 @@ public class LearningRecordServiceImpl extends ServiceImpl<LearningRecordMapper,
             record.setId(old.getId());
             record.setFinished(old.getFinished());
 
-            taskHandler.addLearningRecordTask(record);
+            if (cached) {
+                // 缓存已经更新，只需要提交延迟任务
+                taskHandler.scheduleRecordTask(record);
+            } else {
+                taskHandler.addLearningRecordTask(record);
+            }
             return false;
         }
 
@@ -150,50 +223,192 @@ public class LearningRecordServiceImpl extends ServiceImpl<LearningRecordMapper,
         }
 
         // 清理redis缓存数据
-        taskHandler.cleanRecordCache(formDTO.getLessonId(), formDTO.getSectionId());
+        recordCache.remove(formDTO.getLessonId(), formDTO.getSectionId());
 
         return finished;
     }
 
-    private LearningRecord queryOldRecord(Long lessonId, Long sectionId) {
-        LearningRecord record = taskHandler.readRecordCache(lessonId, sectionId);
-        if (record == null) {
-            record = lambdaQuery()
-                    .eq(LearningRecord::getLessonId, lessonId)
-                    .eq(LearningRecord::getSectionId, sectionId)
-                    .one();
-            if (record != null) {
-                taskHandler.writeRecordCache(record);
+    @Override
+    @Transactional
+    public void addLearningRecords(List<LearningRecordFormDTO> formDTOs) {
+        if (CollUtils.isEmpty(formDTOs)) {
+            return;
+        }
+        if (formDTOs.size() > MAX_BATCH_RECORDS) {
+            throw new BadRequestException("单次提交的学习记录不能超过" + MAX_BATCH_RECORDS + "条");
+        }
+        Long userId = UserContext.getUser();
+        // 记录今日学习活跃
+        activityService.markActive(ActivityType.LEARN, userId);
+        // 1.按小节去重，同一小节只保留最后提交的一条
+        Map<String, LearningRecordFormDTO> formMap = new LinkedHashMap<>(formDTOs.size());
+        for (LearningRecordFormDTO formDTO : formDTOs) {
+            formMap.merge(sectionKey(formDTO.getLessonId(), formDTO.getSectionId()), formDTO,
+                    (o, n) -> isBefore(n.getCommitTime(), o.getCommitTime()) ? o : n);
+        }
+        List<LearningRecordFormDTO> videos = new ArrayList<>(formMap.size());
+        List<LearningRecord> newRecords = new ArrayList<>();
+        List<LearningRecordFormDTO> finishedForms = new ArrayList<>();
+        for (LearningRecordFormDTO formDTO : formMap.values()) {
+            if (formDTO.getSectionType() == SectionType.EXAM) {
+                // 考试直接新增已完成的记录
+                LearningRecord record = BeanUtils.copyBean(formDTO, LearningRecord.class);
+                record.setUserId(userId);
+                record.setFinished(true);
+                record.setFinishTime(formDTO.getCommitTime());
+                newRecords.add(record);
+                finishedForms.add(formDTO);
+            } else {
+                videos.add(formDTO);
+            }
+        }
+
+        // 2.批量查询视频的旧学习记录，先查缓存，未命中的一次查询数据库
+        Map<String, LearningRecord> oldMap = queryOldRecords(videos);
+
+        // 3.处理视频
+        List<LearningRecord> finishedRecords = new ArrayList<>();
+        List<LearningRecord> pendingRecords = new ArrayList<>();
+        List<LearningRecord> newVideoRecords = new ArrayList<>();
+        for (LearningRecordFormDTO formDTO : videos) {
+            LearningRecord old = oldMap.get(sectionKey(formDTO.getLessonId(), formDTO.getSectionId()));
+            if (old == null) {
+                // 不存在 新增
+                LearningRecord record = BeanUtils.copyBean(formDTO, LearningRecord.class);
+                record.setUserId(userId);
+                record.setFinished(false);
+                newRecords.add(record);
+                newVideoRecords.add(record);
+                continue;
             }
+            boolean finished = !old.getFinished() && formDTO.getMoment() * 2 > formDTO.getDuration();
+            LearningRecord record = new LearningRecord();
+            record.setId(old.getId());
+            record.setLessonId(formDTO.getLessonId());
+            record.setSectionId(formDTO.getSectionId());
+            record.setMoment(formDTO.getMoment());
+            if (!finished) {
+                // 不是第一次学完，缓存到redis，提交延迟任务
+                record.setFinished(old.getFinished());
+                pendingRecords.add(record);
+                continue;
+            }
+            // 第一次学完，更新学习记录
+            record.setFinished(true);
+            record.setFinishTime(formDTO.getCommitTime());
+            finishedRecords.add(record);
+            finishedForms.add(formDTO);
+        }
+
+        // 4.批量写入数据库
+        if (CollUtils.isNotEmpty(newRecords) && !saveBatch(newRecords)) {
+            throw new DbException("新增学习记录失败!");
+        }
+        if (CollUtils.isNotEmpty(finishedRecords)) {
+            if (!updateBatchById(finishedRecords)) {
+                throw new DbException("更新学习记录失败!");
+            }
+            recordCache.removeAll(finishedRecords);
+        }
+        // 5.批量缓存播放进度，提交延迟任务
+        taskHandler.addLearningRecordTasks(pendingRecords);
+        // 新增的视频记录写入缓存，之后的心跳直接命中缓存
+        recordCache.putAll(newVideoRecords);
+
+        // 没有小节学完，不更新课表
+        if (CollUtils.isEmpty(finishedForms)) {
+            return;
+        }
+        // 6.处理课表，同一课表的多个小节合并处理
+        Map<Long, List<LearningRecordFormDTO>> lessonForms = finishedForms.stream()
+                .collect(Collectors.groupingBy(LearningRecordFormDTO::getLessonId));
+        lessonForms.forEach((lessonId, forms) -> {
+            LearningRecordFormDTO latest = forms.stream()
+                    .reduce((o, n) -> isBefore(n.getCommitTime(), o.getCommitTime()) ? o : n)
+                    .orElseThrow();
+            handleLesson(lessonId, forms.size(), latest.getSectionId(), latest.getCommitTime());
+        });
+        // 7.发送mq积分消息，每学完一个小节一条
+        for (int i = 0; i < finishedForms.size(); i++) {
+            mqHelper.send(
+                    MqConstants.Exchange.LEARNING_EXCHANGE,
+                    MqConstants.Key.LEARN_SECTION,
+                    userId
+            );
+        }
+    }
+
+    private Map<String, LearningRecord> queryOldRecords(List<LearningRecordFormDTO> forms) {
+        if (CollUtils.isEmpty(forms)) {
+            return CollUtils.emptyMap();
+        }
+        Map<String, LearningRecord> oldMap = new HashMap<>(forms.size());
+        // 1.管道批量查询缓存
+        List<LearningRecord> keys = forms.stream()
+                .map(f -> new LearningRecord().setLessonId(f.getLessonId()).setSectionId(f.getSectionId()))
+                .collect(Collectors.toList());
+        List<LearningRecord> caches = recordCache.getAll(keys);
+        Set<Long> missLessonIds = new HashSet<>();
+        Set<Long> missSectionIds = new HashSet<>();
+        for (int i = 0; i < keys.size(); i++) {
+            LearningRecord key = keys.get(i);
+            LearningRecord cache = caches.get(i);
+            if (cache != null) {
+                oldMap.put(sectionKey(key.getLessonId(), key.getSectionId()), cache);
+                continue;
+            }
+            missLessonIds.add(key.getLessonId());
+            missSectionIds.add(key.getSectionId());
         }
-        return record;
+        if (missSectionIds.isEmpty()) {
+            return oldMap;
+        }
+        // 2.未命中的一次查询数据库
+        List<LearningRecord> records = lambdaQuery()
+                .in(LearningRecord::getLessonId, missLessonIds)
+                .in(LearningRecord::getSectionId, missSectionIds)
+                .list();
+        for (LearningRecord record : records) {
+            oldMap.putIfAbsent(sectionKey(record.getLessonId(), record.getSectionId()), record);
+        }
+        return oldMap;
+    }
+
+    private static String sectionKey(Long lessonId, Long sectionId) {
+        return lessonId + ":" + sectionId;
+    }
+
+    private static boolean isBefore(LocalDateTime t1, LocalDateTime t2) {
+        return t1 != null && t2 != null && t1.isBefore(t2);
     }
 
-    private void handleLesson(LearningRecordFormDTO formDTO) {
+    private void handleLesson(Long lessonId, int finishedSections, Long latestSectionId, LocalDateTime commitTime) {
         // 根据id查询课表
-        LearningLesson lesson = lessonService.getById(formDTO.getLessonId());
+        LearningLesson lesson = lessonService.getById(lessonId);
         if (lesson == null) {
             throw new BizIllegalException("课程不存在，无法更新数据！");
         }
-        // 是否学完，已学完section数+1
+        // 是否学完，已学完section数+本次学完的数量
         boolean allFinished = false; // 全部学完
         Integer sections = 0;
         sections = lesson.getLearnedSections();
-        CourseFullInfoDTO course = courseClient.getCourseInfoById(lesson.getCourseId(), false, false);
+        CourseSimpleInfoDTO course = courseCache.getCourse(lesson.getCourseId());
         if (course == null) {
             throw new BizIllegalException("课程不存在，无法更新数据！");
         }
-        allFinished = sections + 1 >= course.getSectionNum();
+        allFinished = sections + finishedSections >= course.getSectionNum();
         // 更新课表 （学习section数，课表状态，最近学习小节，最近学习时间）
         boolean updated = lessonService.lambdaUpdate()
                 .set(lesson.getLearnedSections() == 0, LearningLesson::getStatus, LessonStatus.LEARNING.getValue())
                 .set(allFinished, LearningLesson::getStatus, LessonStatus.FINISHED.getValue())
-                .set(LearningLesson::getLatestSectionId, formDTO.getSectionId())
-                .set(LearningLesson::getLatestLearnTime, formDTO.getCommitTime())
-                .set(LearningLesson::getLearnedSections, sections + 1)
+                .set(LearningLesson::getLatestSectionId, latestSectionId)
+                .set(LearningLesson::getLatestLearnTime, commitTime)
+                .set(LearningLesson::getLearnedSections, sections + finishedSections)
                 .eq(LearningLesson::getId, lesson.getId()).update();
         if (!updated) {
             throw new DbException("更新失败");
         }
+        // 累加本周学习计划统计
+        planCache.incrFinished(lesson.getUserId(), lessonId, finishedSections);
     }
 }
@@ -2,11 +2,16 @@ package com.tianji.learning.service.impl;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.tianji.api.client.user.UserClient;
 import com.tianji.api.dto.user.UserDTO;
 import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.DateUtils;
+import com.tianji.common.utils.StringUtils;
 import com.tianji.common.utils.UserContext;
+import com.tianji.learning.cache.PointsBoardCache;
+import com.tianji.learning.config.LearningProperties;
 import com.tianji.learning.constants.RedisConstants;
 import com.tianji.learning.domain.po.PointsBoard;
 import com.tianji.learning.domain.query.PointsBoardQuery;
@@ -16,11 +21,14 @@ import com.tianji.learning.mapper.PointsBoardMapper;
 import com.tianji.learning.service.IPointsBoardService;
 import com.tianji.learning.task.TableInfoContext;
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
 import org.springframework.data.redis.core.BoundZSetOperations;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -41,6 +49,22 @@ public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, Point
 
     private final UserClient userClient;
     private final StringRedisTemplate redisTemplate;
+    private final PointsBoardCache boardCache;
+    private final LearningProperties properties;
+    /**
+     * 当前赛季热点分页缓存，同一页并发加载只会执行一次，到达刷新时间后在后台异步刷新
+     */
+    private LoadingCache<HotPageKey, List<PointsBoardItemVO>> hotPageCache;
+
+    @PostConstruct
+    public void initHotPageCache() {
+        LearningProperties.BoardCache config = properties.getBoardCache();
+        hotPageCache = Caffeine.newBuilder()
+                .maximumSize(256)
+                .refreshAfterWrite(Duration.ofMillis(config.getHotPageRefreshMillis()))
+                .expireAfterWrite(Duration.ofMillis(config.getHotPageTtlMillis()))
+                .build(this::loadHotPage);
+    }
 
     @Override
     public PointsBoardVO queryPointsBoardBySeason(PointsBoardQuery query) {
@@ -54,25 +78,50 @@ public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, Point
         PointsBoard myBoard = isCurrent ?
                 queryMyCurrentBoard(key) : // 查询当前榜单（Redis）
                 queryMyHistoryBoard(season); // 查询历史榜单（MySQL）
-        // 查询榜单列表
-        List<PointsBoard> list = isCurrent ?
-                queryCurrentBoardList(key, query.getPageNo(), query.getPageSize()) :
-                queryHistoryBoardList(query);
+        // 查询榜单列表，当前赛季的前几页走热点缓存
+        List<PointsBoardItemVO> items;
+        if (isCurrent && isHotPage(query.getPageNo(), query.getPageSize())) {
+            items = hotPageCache.get(new HotPageKey(key, query.getPageNo(), query.getPageSize()));
+        } else {
+            items = toItemVOs(isCurrent ?
+                    queryCurrentBoardList(key, query.getPageNo(), query.getPageSize()) :
+                    queryHistoryBoardList(query));
+        }
         PointsBoardVO vo = new PointsBoardVO();
         // 处理我的信息
         if (myBoard != null) {
             vo.setRank(myBoard.getRank());
             vo.setPoints(myBoard.getPoints());
         }
-        if (CollUtils.isEmpty(list)) {
+        if (CollUtils.isEmpty(items)) {
             return vo;
         }
+        vo.setBoardList(items);
+        return vo;
+    }
+
+    private boolean isHotPage(Integer pageNo, Integer pageSize) {
+        LearningProperties.BoardCache config = properties.getBoardCache();
+        return pageNo != null && pageSize != null
+                && pageNo <= config.getHotPages() && pageSize <= config.getHotPageMaxSize();
+    }
+
+    private List<PointsBoardItemVO> loadHotPage(HotPageKey pageKey) {
+        return toItemVOs(queryCurrentBoardList(pageKey.getKey(), pageKey.getPageNo(), pageKey.getPageSize()));
+    }
+
+    private List<PointsBoardItemVO> toItemVOs(List<PointsBoard> list) {
+        if (CollUtils.isEmpty(list)) {
+            return CollUtils.emptyList();
+        }
         // 查询用户信息
         Set<Long> uIds = list.stream().map(PointsBoard::getUserId).collect(Collectors.toSet());
         List<UserDTO> users = userClient.queryUserByIds(uIds);
         Map<Long, String> userMap = new HashMap<>(uIds.size());
         if (CollUtils.isNotEmpty(users)) {
-            userMap = users.stream().collect(Collectors.toMap(UserDTO::getId, UserDTO::getName));
+            // 用户名可能为空，toMap不允许null值
+            userMap = users.stream().collect(Collectors.toMap(
+                    UserDTO::getId, u -> StringUtils.nullToDefault(u.getName(), ""), (a, b) -> a));
         }
         // 封装VO
         List<PointsBoardItemVO> items = new ArrayList<>(list.size());
@@ -83,8 +132,7 @@ public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, Point
             itemVO.setName(userMap.get(item.getUserId()));
             items.add(itemVO);
         }
-        vo.setBoardList(items);
-        return vo;
+        return items;
     }
 
     @Override
@@ -105,15 +153,22 @@ public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, Point
 
     private PointsBoard queryMyHistoryBoard(Long season) {
         Long userId = UserContext.getUser();
+        // 1.先查赛季快照
+        PointsBoard cached = boardCache.getUserBoard(season, userId);
+        if (cached != null) {
+            return cached.getRank() == 0 ? null : cached;
+        }
+        // 2.快照未命中，查询数据库
         TableInfoContext.setInfo(POINTS_BOARD_TABLE_PREFIX + season);
         Optional<PointsBoard> opt = lambdaQuery()
                 .eq(PointsBoard::getUserId, userId)
                 .oneOpt();
-        if (opt.isEmpty()) {
-            return null;
+        PointsBoard board = opt.orElse(null);
+        if (board != null) {
+            board.setRank(board.getId().intValue());
         }
-        PointsBoard board = opt.get();
-        board.setRank(board.getId().intValue());
+        // 3.写入快照，未上榜也缓存
+        boardCache.putUserBoard(season, userId, board);
         return board;
     }
 
@@ -146,7 +201,22 @@ public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, Point
     }
 
     private List<PointsBoard> queryHistoryBoardList(PointsBoardQuery query) {
-        TableInfoContext.setInfo(POINTS_BOARD_TABLE_PREFIX + query.getSeason());
+        Long season = query.getSeason();
+        int from = query.from();
+        int pageSize = query.getPageSize();
+        // 1.前N名从赛季快照中读取
+        if (from + pageSize <= boardCache.topSize()) {
+            List<PointsBoard> list = boardCache.getTopPage(season, from, pageSize);
+            if (list == null) {
+                // 快照不存在，查询前N名构建快照
+                List<PointsBoard> top = queryHistoryTop(season, boardCache.topSize());
+                boardCache.saveTop(season, top);
+                list = top.subList(Math.min(from, top.size()), Math.min(from + pageSize, top.size()));
+            }
+            return list;
+        }
+        // 2.超出快照范围，分页查询数据库
+        TableInfoContext.setInfo(POINTS_BOARD_TABLE_PREFIX + season);
         Page<PointsBoard> page = page(query.toMpPage());
         List<PointsBoard> records = page.getRecords();
         if (CollUtils.isEmpty(records)) {
@@ -155,4 +225,24 @@ public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, Point
         records.forEach(record -> record.setRank(record.getId().intValue()));
         return records;
     }
+
+    private List<PointsBoard> queryHistoryTop(Long season, int size) {
+        TableInfoContext.setInfo(POINTS_BOARD_TABLE_PREFIX + season);
+        List<PointsBoard> records = lambdaQuery()
+                .orderByAsc(PointsBoard::getId)
+                .last("LIMIT " + size)
+                .list();
+        records.forEach(record -> record.setRank(record.getId().intValue()));
+        return records;
+    }
+
+    /**
+     * 热点分页缓存的Key，榜单Key中包含赛季月份，换季后自然失效
+     */
+    @Value
+    private static class HotPageKey {
+        String key;
+        Integer pageNo;
+        Integer pageSize;
+    }
 }
@@ -4,6 +4,7 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.DateUtils;
 import com.tianji.common.utils.UserContext;
+import com.tianji.learning.cache.LearningPlanCache;
 import com.tianji.learning.constants.RedisConstants;
 import com.tianji.learning.domain.po.PointsRecord;
 import com.tianji.learning.domain.vo.PointsStatisticsVO;
@@ -12,12 +13,24 @@ import com.tianji.learning.mapper.PointsRecordMapper;
 import com.tianji.learning.service.IPointsRecordService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * <p>
@@ -27,44 +40,161 @@ import java.util.List;
  * @author colinwang
  * @since 2024-08-19
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class PointsRecordServiceImpl extends ServiceImpl<PointsRecordMapper, PointsRecord> implements IPointsRecordService {
 
     public final StringRedisTemplate redisTemplate;
+    private final LearningPlanCache planCache;
+    private static final RedisScript<Long> ADD_POINTS_SCRIPT;
+    private static final RedisScript<List> TAKE_PENDING_SCRIPT;
+    private static final DateTimeFormatter DAILY_KEY_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+    /**
+     * 每日积分Key的有效期，保留到第二天，避免跨天时的边界问题
+     */
+    private static final long DAILY_KEY_TTL_SECONDS = 2 * 24 * 3600;
+    /**
+     * 消息去重Key的有效期，覆盖消息重新投递和错误队列人工重放的时间
+     */
+    private static final long MESSAGE_KEY_TTL_SECONDS = 3 * 24 * 3600;
+
+    static {
+        ADD_POINTS_SCRIPT = RedisScript.of(new ClassPathResource("lua/points_cap_incr.lua"), Long.class);
+        TAKE_PENDING_SCRIPT = RedisScript.of(new ClassPathResource("lua/list_batch_move.lua"), List.class);
+    }
 
     @Override
     public void addPointsRecord(Long userId, Integer points, PointsRecordType type) {
-        // 查询积分上限
-        int maxPoints = type.getMaxPoints();
         LocalDateTime now = LocalDateTime.now();
-        int realPoints = points;
-        if (maxPoints > 0) {
-            // 判断是否超出上限
-            LocalDateTime begin = DateUtils.getDayStartTime(now);
-            LocalDateTime end = DateUtils.getDayEndTime(now);
-            int currentPoints = queryUserPointsByTypeAndDate(userId, type, begin, end);
-            if (currentPoints >= maxPoints) {
-                return;
+        // 在Redis中原子地判断每日上限、累加当日积分和赛季总积分，并追加待持久化的积分记录
+        Long realPoints = redisTemplate.execute(
+                ADD_POINTS_SCRIPT, addPointsKeys(userId, now), (Object[]) addPointsArgs(userId, points, type, now));
+        log.debug("用户{}获得{}积分{}，实际获得{}", userId, type.getDesc(), points, realPoints);
+    }
+
+    @Override
+    public void addPointsRecords(Map<Long, Map<String, Integer>> userPoints, PointsRecordType type) {
+        if (CollUtils.isEmpty(userPoints)) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        String script = ADD_POINTS_SCRIPT.getScriptAsString();
+        // 管道批量执行积分脚本，每个用户一次，脚本中按消息id去重，整批重试不会重复发放
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection src = (StringRedisConnection) connection;
+            userPoints.forEach((userId, messagePoints) -> {
+                int total = messagePoints.values().stream().mapToInt(Integer::intValue).sum();
+                List<String> keys = new ArrayList<>(addPointsKeys(userId, now));
+                List<String> args = new ArrayList<>(Arrays.asList(addPointsArgs(userId, total, type, now)));
+                args.add(String.valueOf(MESSAGE_KEY_TTL_SECONDS));
+                messagePoints.forEach((messageId, points) -> {
+                    keys.add(RedisConstants.POINTS_MESSAGE_KEY_PREFIX + messageId);
+                    args.add(String.valueOf(points));
+                });
+                List<String> keysAndArgs = new ArrayList<>(keys.size() + args.size());
+                keysAndArgs.addAll(keys);
+                keysAndArgs.addAll(args);
+                src.eval(script, ReturnType.INTEGER, keys.size(), keysAndArgs.toArray(new String[0]));
+            });
+            return null;
+        });
+        log.debug("批量处理{}个用户的{}积分", userPoints.size(), type.getDesc());
+    }
+
+    private List<String> addPointsKeys(Long userId, LocalDateTime now) {
+        String dailyKey = RedisConstants.POINTS_DAILY_KEY_PREFIX
+                + now.format(DAILY_KEY_FORMATTER) + ":" + userId;
+        String boardKey = RedisConstants.POINTS_BOARD_KEY_PREFIX + now.format(DateUtils.POINTS_BOARD_SUFFIX_FORMATTER);
+        String planKey = planCache.weekKeyOf(userId, now.toLocalDate());
+        return List.of(dailyKey, boardKey, RedisConstants.POINTS_RECORD_PENDING_KEY, planKey);
+    }
+
+    private String[] addPointsArgs(Long userId, Integer points, PointsRecordType type, LocalDateTime now) {
+        return new String[]{
+                String.valueOf(type.getValue()),
+                String.valueOf(points),
+                String.valueOf(type.getMaxPoints()),
+                String.valueOf(DAILY_KEY_TTL_SECONDS),
+                userId.toString(),
+                String.valueOf(now.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli())
+        };
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int persistPendingRecords(int maxSize) {
+        // 1.批量取出待持久化的积分记录，移动到处理中列表，上次未确认的数据优先返回
+        List<String> items = redisTemplate.execute(TAKE_PENDING_SCRIPT,
+                List.of(RedisConstants.POINTS_RECORD_PENDING_KEY, RedisConstants.POINTS_RECORD_PROCESSING_KEY),
+                String.valueOf(maxSize));
+        if (CollUtils.isEmpty(items)) {
+            return 0;
+        }
+        // 2.数据转换，统计本周学习计划未初始化时发放的积分记录数
+        List<PointsRecord> list = new ArrayList<>(items.size());
+        Map<String, Integer> planPending = new HashMap<>();
+        for (String item : items) {
+            String[] arr = item.split("\\|");
+            PointsRecord p = decodePending(item, arr);
+            if (p == null) {
+                continue;
+            }
+            if (arr.length == 5) {
+                planPending.merge(planCache.weekKeyOf(p.getUserId(), p.getCreateTime().toLocalDate()), 1, Integer::sum);
             }
-            if (currentPoints + points > maxPoints) {
-                realPoints = maxPoints - currentPoints;
+            if (p.getPoints() > 0) {
+                list.add(p);
             }
         }
+        // 3.多行插入数据库，失败或宕机时数据仍在处理中列表，下次重试
+        if (CollUtils.isNotEmpty(list)) {
+            getBaseMapper().insertBatch(list);
+        }
+        // 4.写库成功，本周学习计划统计可以用数据库的统计结果初始化了
+        planCache.ackPersistedPoints(planPending);
+        // 5.删除处理中列表
+        redisTemplate.delete(RedisConstants.POINTS_RECORD_PROCESSING_KEY);
+        return items.size();
+    }
+
+    private PointsRecord decodePending(String item, String[] arr) {
+        // 格式：userId|type|points|createTime，本周学习计划未初始化时末尾有标记：|1
+        if (arr.length != 4 && arr.length != 5) {
+            log.error("积分记录格式错误：{}", item);
+            return null;
+        }
         PointsRecord p = new PointsRecord();
-        p.setUserId(userId);
-        p.setPoints(realPoints);
-        p.setType(type);
-        save(p);
-        // 更新总积分到redis
-        String key = RedisConstants.POINTS_BOARD_KEY_PREFIX + now.format(DateUtils.POINTS_BOARD_SUFFIX_FORMATTER);
-        redisTemplate.opsForZSet().incrementScore(key, userId.toString(), realPoints);
+        p.setUserId(Long.valueOf(arr[0]));
+        p.setType(PointsRecordType.of(Integer.valueOf(arr[1])));
+        p.setPoints(Integer.valueOf(arr[2]));
+        p.setCreateTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(arr[3])), ZoneId.systemDefault()));
+        return p;
     }
 
     @Override
     public List<PointsStatisticsVO> queryMyPointsToday() {
         Long userId = UserContext.getUser();
         LocalDateTime now = LocalDateTime.now();
+        // 优先读取Redis中的当日积分
+        String dailyKey = RedisConstants.POINTS_DAILY_KEY_PREFIX
+                + now.format(DAILY_KEY_FORMATTER) + ":" + userId;
+        Map<Object, Object> daily = redisTemplate.opsForHash().entries(dailyKey);
+        if (CollUtils.isNotEmpty(daily)) {
+            List<PointsStatisticsVO> voList = new ArrayList<>(daily.size());
+            for (Map.Entry<Object, Object> entry : daily.entrySet()) {
+                PointsRecordType type = PointsRecordType.of(Integer.valueOf(entry.getKey().toString()));
+                if (type == null) {
+                    continue;
+                }
+                PointsStatisticsVO vo = new PointsStatisticsVO();
+                vo.setType(type.getDesc());
+                vo.setPoints(Integer.valueOf(entry.getValue().toString()));
+                vo.setMaxPoints(type.getMaxPoints());
+                voList.add(vo);
+            }
+            return voList;
+        }
         LocalDateTime begin = DateUtils.getDayStartTime(now);
         LocalDateTime end = DateUtils.getDayEndTime(now);
         // 构建查询条件
@@ -87,14 +217,4 @@ public class PointsRecordServiceImpl extends ServiceImpl<PointsRecordMapper, Poi
         }
         return voList;
     }
-
-    private int queryUserPointsByTypeAndDate(Long userId, PointsRecordType type, LocalDateTime begin, LocalDateTime end) {
-        QueryWrapper<PointsRecord> wrapper = new QueryWrapper<>();
-        wrapper.lambda()
-                .eq(PointsRecord::getUserId, userId)
-                .eq(type != null, PointsRecord::getType, type)
-                .between(begin != null && end != null, PointsRecord::getCreateTime, begin, end);
-        Integer points = getBaseMapper().queryUserPointsByTypeAndDate(wrapper);
-        return points == null ? 0 : points;
-    }
 }
@@ -2,21 +2,30 @@ package com.tianji.learning.service.impl;
 
 import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
 import com.tianji.common.constants.MqConstants;
+import com.tianji.common.exceptions.BadRequestException;
 import com.tianji.common.exceptions.BizIllegalException;
 import com.tianji.common.utils.BooleanUtils;
 import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.DateUtils;
+import com.tianji.common.utils.StringUtils;
 import com.tianji.common.utils.UserContext;
 import com.tianji.learning.constants.RedisConstants;
 import com.tianji.learning.domain.vo.SignResultVO;
+import com.tianji.learning.domain.vo.SignStatsVO;
 import com.tianji.learning.mq.message.SignInMessage;
+import com.tianji.learning.enums.ActivityType;
 import com.tianji.learning.service.ISignRecordService;
+import com.tianji.learning.service.IUserActivityService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 
 @Service
@@ -25,6 +34,7 @@ public class SignRecordServiceImpl implements ISignRecordService {
 
     private final StringRedisTemplate redisTemplate;
     private final RabbitMqHelper mqHelper;
+    private final IUserActivityService activityService;
 
     @Override
     public SignResultVO addSignRecords() {
@@ -41,7 +51,9 @@ public class SignRecordServiceImpl implements ISignRecordService {
         if (BooleanUtils.isTrue(exists)) {
             throw new BizIllegalException("不允许重复签到！");
         }
-        int signDays = countSignDays(key, now.getDayOfMonth());
+        // 记录今日签到活跃
+        activityService.markActive(ActivityType.SIGN, userId);
+        int signDays = countSignDays(userId, now);
         int rewardPoints = 0;
         switch (signDays) {
             case 7:
@@ -92,20 +104,126 @@ public class SignRecordServiceImpl implements ISignRecordService {
         return bytes;
     }
 
-    private int countSignDays(String key, int len) {
-        // 获取本月所有签到记录
-        List<Long> result = redisTemplate.opsForValue()
-                .bitField(key, BitFieldSubCommands.create().get(
-                        BitFieldSubCommands.BitFieldType.unsigned(len)).valueAt(0));
-        if (CollUtils.isEmpty(result)) {
+    @Override
+    public SignStatsVO querySignStats(String month) {
+        Long userId = UserContext.getUser();
+        LocalDate today = LocalDate.now();
+        YearMonth thisMonth = YearMonth.from(today);
+        YearMonth ym = parseMonth(month, thisMonth);
+        if (ym.isAfter(thisMonth)) {
+            throw new BadRequestException("不能查询未来月份的签到记录");
+        }
+        int len = ym.equals(thisMonth) ? today.getDayOfMonth() : ym.lengthOfMonth();
+        String key = signKeyOf(userId, ym);
+        YearMonth prev = ym.minusMonths(1);
+        // 1.一次管道查询：本月前len天的签到位、签到总数、首次签到位置、上月整月的签到位
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection src = (StringRedisConnection) connection;
+            src.bitfield(key, monthBits(len));
+            src.bitCount(key);
+            src.bitPos(key, true);
+            src.bitfield(signKeyOf(userId, prev), monthBits(prev.lengthOfMonth()));
+            return null;
+        });
+        long bits = firstValue(results.get(0));
+        Long count = (Long) results.get(1);
+        Long firstPos = (Long) results.get(2);
+        long prevBits = firstValue(results.get(3));
+        // 2.封装结果
+        SignStatsVO vo = new SignStatsVO();
+        vo.setMonth(ym.format(DateUtils.POINTS_BOARD_SUFFIX_FORMATTER));
+        vo.setDays(len);
+        vo.setSignMask((int) (Long.reverse(bits) >>> (Long.SIZE - len)));
+        vo.setSignCount(count == null ? 0 : count.intValue());
+        vo.setFirstSignDay(firstPos == null || firstPos < 0 ? null : firstPos.intValue() + 1);
+        vo.setCurrentStreak(countStreak(userId, ym, bits, len, prevBits));
+        vo.setLongestStreak(longestStreak(bits));
+        return vo;
+    }
+
+    /**
+     * 统计截止今天的连续签到天数，本月每天都签到时继续累计之前月份
+     */
+    private int countSignDays(Long userId, LocalDate today) {
+        YearMonth ym = YearMonth.from(today);
+        YearMonth prev = ym.minusMonths(1);
+        int len = today.getDayOfMonth();
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection src = (StringRedisConnection) connection;
+            src.bitfield(signKeyOf(userId, ym), monthBits(len));
+            src.bitfield(signKeyOf(userId, prev), monthBits(prev.lengthOfMonth()));
+            return null;
+        });
+        return countStreak(userId, ym, firstValue(results.get(0)), len, firstValue(results.get(1)));
+    }
+
+    /**
+     * 计算连续签到天数
+     * @param bits 本月签到位，最低位是最后一天
+     * @param len 本月统计的天数
+     * @param prevBits 上月整月的签到位
+     */
+    private int countStreak(Long userId, YearMonth month, long bits, int len, long prevBits) {
+        // 末尾连续1的个数就是连续签到天数
+        int streak = Long.numberOfTrailingZeros(~bits);
+        if (streak < len) {
+            return streak;
+        }
+        // 本月全部签到，继续累计上月
+        YearMonth prev = month.minusMonths(1);
+        int prevStreak = Long.numberOfTrailingZeros(~prevBits);
+        streak += Math.min(prevStreak, prev.lengthOfMonth());
+        // 上月也全部签到，逐月向前查询，这种情况很少
+        while (prevStreak >= prev.lengthOfMonth()) {
+            prev = prev.minusMonths(1);
+            List<Long> result = redisTemplate.opsForValue()
+                    .bitField(signKeyOf(userId, prev), monthBits(prev.lengthOfMonth()));
+            prevStreak = Long.numberOfTrailingZeros(~firstValue(result));
+            streak += Math.min(prevStreak, prev.lengthOfMonth());
+        }
+        return streak;
+    }
+
+    /**
+     * 最长连续签到天数，每次与右移一位的自己求与，连续1的长度减1，直到全部为0
+     */
+    private int longestStreak(long bits) {
+        int longest = 0;
+        while (bits != 0) {
+            bits &= bits >>> 1;
+            longest++;
+        }
+        return longest;
+    }
+
+    private BitFieldSubCommands monthBits(int len) {
+        return BitFieldSubCommands.create()
+                .get(BitFieldSubCommands.BitFieldType.unsigned(len)).valueAt(0);
+    }
+
+    private long firstValue(Object result) {
+        if (!(result instanceof List)) {
             return 0;
         }
-        int num = result.get(0).intValue();
-        int count = 0;
-        while ((num & 1) == 1) {
-            count++;
-            num >>>= 1;
+        List<?> list = (List<?>) result;
+        if (CollUtils.isEmpty(list) || list.get(0) == null) {
+            return 0;
+        }
+        return ((Number) list.get(0)).longValue();
+    }
+
+    private YearMonth parseMonth(String month, YearMonth defaultMonth) {
+        if (StringUtils.isBlank(month)) {
+            return defaultMonth;
         }
-        return count;
+        try {
+            return YearMonth.parse(month, DateUtils.POINTS_BOARD_SUFFIX_FORMATTER);
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException("月份格式错误，正确格式为yyyyMM");
+        }
+    }
+
+    private String signKeyOf(Long userId, YearMonth month) {
+        return RedisConstants.SIGN_RECORD_KEY_PREFIX + userId + month.format(DateUtils.SIGN_DATE_SUFFIX_FORMATTER);
     }
 }
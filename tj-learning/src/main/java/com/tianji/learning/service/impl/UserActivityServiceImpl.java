@@ -0,0 +1,209 @@
+package com.tianji.learning.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tianji.common.exceptions.BadRequestException;
+import com.tianji.common.utils.CollUtils;
+import com.tianji.learning.config.LearningProperties;
+import com.tianji.learning.constants.RedisConstants;
+import com.tianji.learning.domain.vo.ActivityRetentionVO;
+import com.tianji.learning.enums.ActivityType;
+import com.tianji.learning.service.IUserActivityService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户活跃统计
+ * <p>
+ * 每种行为每天一个位图，用户id通过Hash映射为连续的偏移量，避免雪花id导致位图过大。
+ * 日活直接BITCOUNT，区间活跃用BITOP OR，留存用BITOP AND，结果位图短暂缓存。
+ * 每个用户每天只需要标记一次，本地记录已标记的用户，学习心跳等高频调用不再访问Redis。
+ * </p>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UserActivityServiceImpl implements IUserActivityService {
+
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final int MAX_RANGE_DAYS = 31;
+    private static final RedisScript<Long> MARK_ACTIVE_SCRIPT;
+    private static final RedisScript<Long> BITOP_COUNT_SCRIPT;
+
+    static {
+        MARK_ACTIVE_SCRIPT = RedisScript.of(new ClassPathResource("lua/activity_mark.lua"), Long.class);
+        BITOP_COUNT_SCRIPT = RedisScript.of(new ClassPathResource("lua/bitop_count.lua"), Long.class);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final LearningProperties properties;
+    /**
+     * 本实例当天已标记过的用户，key格式：类型:日期:用户id
+     */
+    private final Cache<String, Boolean> markedUsers = Caffeine.newBuilder()
+            .maximumSize(200_000)
+            .expireAfterWrite(Duration.ofDays(1))
+            .build();
+
+    @Override
+    public void markActive(ActivityType type, Long userId) {
+        if (userId == null) {
+            return;
+        }
+        // 1.今天已经标记过，直接返回
+        LocalDate today = LocalDate.now();
+        String markedKey = markedKeyOf(type, today, userId);
+        if (markedUsers.getIfPresent(markedKey) != null) {
+            return;
+        }
+        // 2.标记活跃，活跃统计失败不影响业务
+        try {
+            redisTemplate.execute(MARK_ACTIVE_SCRIPT, markKeys(type, today), userId.toString(), ttlSeconds());
+            markedUsers.put(markedKey, Boolean.TRUE);
+        } catch (Exception e) {
+            log.error("标记用户活跃失败，用户：{}，类型：{}", userId, type, e);
+        }
+    }
+
+    @Override
+    public void markActive(ActivityType type, Collection<Long> userIds) {
+        if (CollUtils.isEmpty(userIds)) {
+            return;
+        }
+        // 1.过滤掉今天已经标记过的用户
+        LocalDate today = LocalDate.now();
+        List<String> markedKeys = new ArrayList<>(userIds.size());
+        List<Long> unmarked = new ArrayList<>(userIds.size());
+        for (Long userId : userIds) {
+            if (userId == null) {
+                continue;
+            }
+            String markedKey = markedKeyOf(type, today, userId);
+            if (markedUsers.getIfPresent(markedKey) == null) {
+                markedKeys.add(markedKey);
+                unmarked.add(userId);
+            }
+        }
+        if (unmarked.isEmpty()) {
+            return;
+        }
+        List<String> keys = markKeys(type, today);
+        String script = MARK_ACTIVE_SCRIPT.getScriptAsString();
+        String ttl = ttlSeconds();
+        try {
+            // 2.管道批量执行，每个用户一次
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection src = (StringRedisConnection) connection;
+                for (Long userId : unmarked) {
+                    List<String> keysAndArgs = new ArrayList<>(keys);
+                    keysAndArgs.add(userId.toString());
+                    keysAndArgs.add(ttl);
+                    src.eval(script, ReturnType.INTEGER, keys.size(), keysAndArgs.toArray(new String[0]));
+                }
+                return null;
+            });
+            markedKeys.forEach(k -> markedUsers.put(k, Boolean.TRUE));
+        } catch (Exception e) {
+            log.error("批量标记用户活跃失败，类型：{}", type, e);
+        }
+    }
+
+    @Override
+    public long countDailyActive(ActivityType type, LocalDate date) {
+        Long count = redisTemplate.execute((RedisCallback<Long>) connection ->
+                ((StringRedisConnection) connection).bitCount(dayKeyOf(type, date)));
+        return count == null ? 0 : count;
+    }
+
+    @Override
+    public long countActive(ActivityType type, LocalDate begin, LocalDate end) {
+        checkRange(begin, end);
+        if (begin.equals(end)) {
+            return countDailyActive(type, begin);
+        }
+        // 区间内每天的位图求或
+        List<String> keys = new ArrayList<>();
+        keys.add(resultKeyOf(type, "or", begin, end));
+        for (LocalDate d = begin; !d.isAfter(end); d = d.plusDays(1)) {
+            keys.add(dayKeyOf(type, d));
+        }
+        return bitOpCount(keys, "OR", end);
+    }
+
+    @Override
+    public ActivityRetentionVO countRetention(ActivityType type, LocalDate cohortDate, LocalDate date) {
+        if (cohortDate == null || date == null || !date.isAfter(cohortDate)) {
+            throw new BadRequestException("目标日期必须晚于基准日期");
+        }
+        // 基准日与目标日的位图求与
+        long cohort = countDailyActive(type, cohortDate);
+        long retained = bitOpCount(List.of(
+                resultKeyOf(type, "and", cohortDate, date), dayKeyOf(type, cohortDate), dayKeyOf(type, date)),
+                "AND", date);
+        ActivityRetentionVO vo = new ActivityRetentionVO();
+        vo.setCohortUsers(cohort);
+        vo.setRetainedUsers(retained);
+        vo.setRetentionRate(cohort == 0 ? 0 : Math.round(retained * 10000.0 / cohort) / 10000.0);
+        return vo;
+    }
+
+    private long bitOpCount(List<String> keys, String op, LocalDate end) {
+        // 已结束的区间结果不再变化，缓存更久
+        long ttl = end.isBefore(LocalDate.now()) ? TimeUnit.DAYS.toSeconds(1) : 60;
+        Long count = redisTemplate.execute(BITOP_COUNT_SCRIPT, keys, op, String.valueOf(ttl));
+        return count == null ? 0 : count;
+    }
+
+    private void checkRange(LocalDate begin, LocalDate end) {
+        if (begin == null || end == null || end.isBefore(begin)) {
+            throw new BadRequestException("统计日期范围错误");
+        }
+        if (ChronoUnit.DAYS.between(begin, end) >= MAX_RANGE_DAYS) {
+            throw new BadRequestException("统计日期范围不能超过" + MAX_RANGE_DAYS + "天");
+        }
+    }
+
+    private List<String> markKeys(ActivityType type, LocalDate date) {
+        List<String> keys = new ArrayList<>(4);
+        keys.add(RedisConstants.ACTIVITY_OFFSET_KEY);
+        keys.add(RedisConstants.ACTIVITY_OFFSET_SEQ_KEY);
+        keys.add(dayKeyOf(type, date));
+        if (type != ActivityType.ALL) {
+            keys.add(dayKeyOf(ActivityType.ALL, date));
+        }
+        return keys;
+    }
+
+    private String markedKeyOf(ActivityType type, LocalDate date, Long userId) {
+        return type.getKey() + ":" + date.format(DAY_FORMATTER) + ":" + userId;
+    }
+
+    private String ttlSeconds() {
+        return String.valueOf(TimeUnit.DAYS.toSeconds(properties.getActivityKeepDays()));
+    }
+
+    private String dayKeyOf(ActivityType type, LocalDate date) {
+        return RedisConstants.ACTIVITY_KEY_PREFIX + type.getKey() + ":" + date.format(DAY_FORMATTER);
+    }
+
+    private String resultKeyOf(ActivityType type, String op, LocalDate begin, LocalDate end) {
+        return RedisConstants.ACTIVITY_KEY_PREFIX + type.getKey() + ":" + op + ":"
+                + begin.format(DAY_FORMATTER) + "-" + end.format(DAY_FORMATTER);
+    }
+}
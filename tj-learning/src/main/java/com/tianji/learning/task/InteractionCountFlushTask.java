@@ -0,0 +1,95 @@
+package com.tianji.learning.task;
+
+import com.tianji.api.dto.IdAndNumDTO;
+import com.tianji.common.autoconfigure.redisson.annotations.Lock;
+import com.tianji.common.autoconfigure.redisson.enums.LockStrategy;
+import com.tianji.common.utils.CollUtils;
+import com.tianji.learning.cache.InteractionCountCache;
+import com.tianji.learning.mapper.InteractionQuestionMapper;
+import com.tianji.learning.mapper.InteractionReplyMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把Redis中累加的回答数、评论数增量批量写回数据库
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class InteractionCountFlushTask {
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final int MAX_ACK_RETRIES = 5;
+    private static final long ACK_RETRY_INTERVAL_MILLIS = 200;
+
+    private final InteractionCountCache countCache;
+    private final InteractionQuestionMapper questionMapper;
+    private final InteractionReplyMapper replyMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * 取出、写库、确认在同一把分布式锁内完成，避免多个实例重复写入同一批处理中的增量
+     */
+    @Scheduled(fixedDelay = 5000)
+    @Lock(name = "lock:qa:times:flush", lockStrategy = LockStrategy.SKIP_FAST)
+    public void flushCounts() {
+        try {
+            Map<Long, Integer> answerTimes = countCache.takeAnswerTimes();
+            if (CollUtils.isNotEmpty(answerTimes)) {
+                transactionTemplate.executeWithoutResult(status ->
+                        split(answerTimes).forEach(questionMapper::incrAnswerTimesBatch));
+                ack(countCache::ackAnswerTimes);
+                log.debug("写回问题回答数 {} 条", answerTimes.size());
+            }
+        } catch (Exception e) {
+            log.error("写回问题回答数异常", e);
+        }
+        try {
+            Map<Long, Integer> replyTimes = countCache.takeReplyTimes();
+            if (CollUtils.isNotEmpty(replyTimes)) {
+                transactionTemplate.executeWithoutResult(status ->
+                        split(replyTimes).forEach(replyMapper::incrReplyTimesBatch));
+                ack(countCache::ackReplyTimes);
+                log.debug("写回回答评论数 {} 条", replyTimes.size());
+            }
+        } catch (Exception e) {
+            log.error("写回回答评论数异常", e);
+        }
+    }
+
+    /**
+     * 数据库已经提交，确认失败时持有锁重试，避免下次取出同一批增量再写一次
+     */
+    private void ack(Runnable ack) throws InterruptedException {
+        for (int i = 1; ; i++) {
+            try {
+                ack.run();
+                return;
+            } catch (Exception e) {
+                if (i >= MAX_ACK_RETRIES) {
+                    throw e;
+                }
+                log.warn("确认写回的增量失败，第{}次重试", i);
+                TimeUnit.MILLISECONDS.sleep(ACK_RETRY_INTERVAL_MILLIS * i);
+            }
+        }
+    }
+
+    private List<List<IdAndNumDTO>> split(Map<Long, Integer> deltas) {
+        List<IdAndNumDTO> list = new ArrayList<>(deltas.size());
+        deltas.forEach((id, num) -> {
+            IdAndNumDTO dto = new IdAndNumDTO();
+            dto.setId(id);
+            dto.setNum(num);
+            list.add(dto);
+        });
+        return CollUtils.split(list, MAX_BATCH_SIZE);
+    }
+}
@@ -1,25 +1,35 @@
 package com.tianji.learning.task;
 
-import com.tianji.common.utils.JsonUtils;
-import com.tianji.common.utils.StringUtils;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.tianji.common.utils.CollUtils;
+import com.tianji.learning.cache.LearningRecordCache;
+import com.tianji.learning.config.LearningProperties;
+import com.tianji.learning.constants.RedisConstants;
 import com.tianji.learning.domain.po.LearningLesson;
 import com.tianji.learning.domain.po.LearningRecord;
+import com.tianji.learning.mapper.LearningLessonMapper;
 import com.tianji.learning.mapper.LearningRecordMapper;
-import com.tianji.learning.service.ILearningLessonService;
-import lombok.Data;
-import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
-import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Objects;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.DelayQueue;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 @Slf4j
 @Component
@@ -28,122 +38,268 @@ public class LearningRecordDelayTaskHandler {
 
     private final StringRedisTemplate redisTemplate;
     private final LearningRecordMapper recordMapper;
-    private final ILearningLessonService lessonService;
-    private final DelayQueue<DelayTask<RecordTaskData>> queue = new DelayQueue<>();
-    private final static String RECORD_KEY_TEMPLATE = "learning:record:{}";
+    private final LearningLessonMapper lessonMapper;
+    private final LearningProperties properties;
+    private final LearningRecordCache recordCache;
+    private static final RedisScript<List> POP_DELAY_TASK_SCRIPT;
+    /**
+     * 失败重试的最大退避时间
+     */
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5);
     private static volatile boolean begin = true;
+    private ExecutorService executor;
+    private final RecordTaskMetrics metrics = new RecordTaskMetrics();
+
+    static {
+        POP_DELAY_TASK_SCRIPT = RedisScript.of(new ClassPathResource("lua/record_delay_pop.lua"), List.class);
+    }
 
     @PostConstruct
     public void init(){
-        CompletableFuture.runAsync(this::handleDelayTask);
+        // 每个分片一个消费线程，多个实例同时消费同一个分片时，由Lua脚本保证任务只被领取一次
+        int shards = properties.getRecordTask().getShards();
+        executor = Executors.newFixedThreadPool(shards,
+                ThreadFactoryBuilder.create().setNamePrefix("learning-record-shard-").build());
+        for (int i = 0; i < shards; i++) {
+            String key = RedisConstants.RECORD_DELAY_KEY_PREFIX + i;
+            executor.execute(() -> handleDelayTask(key));
+        }
     }
     @PreDestroy
     public void destroy(){
         begin = false;
+        executor.shutdownNow();
         log.debug("延迟任务停止执行！");
     }
 
-    public void handleDelayTask(){
+    public void handleDelayTask(String key){
+        LearningProperties.RecordTask config = properties.getRecordTask();
+        // 连续失败次数，处理成功后清零
+        int failures = 0;
         while (begin) {
             try {
-                // 1.获取到期的延迟任务
-                DelayTask<RecordTaskData> task = queue.take();
-                RecordTaskData data = task.getData();
-                // 2.查询Redis缓存
-                LearningRecord record = readRecordCache(data.getLessonId(), data.getSectionId());
-                if (record == null) {
+                // 1.批量领取到期的延迟任务
+                List<String> tasks = popDueTasks(key, config.getBatchSize());
+                if (CollUtils.isEmpty(tasks)) {
+                    // 没有到期任务，等待下一次轮询
+                    TimeUnit.MILLISECONDS.sleep(config.getPollIntervalMillis());
                     continue;
                 }
-                // 3.比较数据，moment值
-                if(!Objects.equals(data.getMoment(), record.getMoment())) {
-                    // 不一致，说明用户还在持续提交播放进度，放弃旧数据
-                    continue;
+                // 2.批量处理
+                try {
+                    flushTasks(tasks);
+                } catch (Exception e) {
+                    // 处理失败，任务延后放回队列，退避时间随连续失败次数增长
+                    requeueTasks(key, tasks, backoffMillis(failures + 1));
+                    throw e;
                 }
-
-                // 4.一致，持久化播放进度数据到数据库
-                // 4.1.更新学习记录的moment
-                record.setFinished(null);
-                recordMapper.updateById(record);
-                // 4.2.更新课表最近学习信息
-                LearningLesson lesson = new LearningLesson();
-                lesson.setId(data.getLessonId());
-                lesson.setLatestSectionId(data.getSectionId());
-                lesson.setLatestLearnTime(LocalDateTime.now());
-                lessonService.updateById(lesson);
+                failures = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             } catch (Exception e) {
-                log.error("处理延迟任务发生异常", e);
+                failures++;
+                long backoff = backoffMillis(failures);
+                log.error("处理延迟任务发生异常，连续失败{}次，{}毫秒后重试", failures, backoff, e);
+                // 数据库或Redis持续异常时暂停当前分片，避免反复领取、失败
+                try {
+                    TimeUnit.MILLISECONDS.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 失败重试的退避时间，从延迟时间开始逐次翻倍，不超过{@value #MAX_BACKOFF_MILLIS}毫秒
+     */
+    private long backoffMillis(int failures) {
+        long base = TimeUnit.SECONDS.toMillis(properties.getRecordTask().getDelaySeconds());
+        return Math.min(base << Math.min(failures - 1, 10), MAX_BACKOFF_MILLIS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> popDueTasks(String key, int batchSize) {
+        return redisTemplate.execute(POP_DELAY_TASK_SCRIPT, List.of(key),
+                String.valueOf(System.currentTimeMillis()), String.valueOf(batchSize));
+    }
+
+    private void requeueTasks(String key, List<String> tasks, long backoffMillis) {
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>(tasks.size());
+        double dueTime = System.currentTimeMillis() + backoffMillis;
+        for (String task : tasks) {
+            tuples.add(new DefaultTypedTuple<>(task, dueTime));
+        }
+        // 期间用户又提交了进度的，保留新的到期时间
+        redisTemplate.opsForZSet().addIfAbsent(key, tuples);
+    }
+
+    private void flushTasks(List<String> tasks) {
+        long start = System.nanoTime();
+        // 1.解析任务，同一小节在ZSet中只有一个成员，天然合并
+        List<LearningRecord> dataList = new ArrayList<>(tasks.size());
+        for (String task : tasks) {
+            dataList.add(RecordTaskData.parse(task));
+        }
+        // 2.批量查询Redis缓存
+        List<LearningRecord> caches = recordCache.getAll(dataList);
+        // 3.任务到期说明用户在延迟时间内没有再提交进度，缓存中就是最终的播放进度
+        LocalDateTime now = LocalDateTime.now();
+        List<LearningRecord> records = new ArrayList<>(dataList.size());
+        Map<Long, LearningLesson> lessons = new LinkedHashMap<>();
+        for (int i = 0; i < dataList.size(); i++) {
+            LearningRecord data = dataList.get(i);
+            LearningRecord record = caches.get(i);
+            if (record == null) {
+                // 缓存不存在，说明小节已学完或缓存已过期
+                continue;
             }
+            records.add(record);
+            LearningLesson lesson = new LearningLesson();
+            lesson.setId(data.getLessonId());
+            lesson.setLatestSectionId(data.getSectionId());
+            lesson.setLatestLearnTime(now);
+            lessons.put(lesson.getId(), lesson);
         }
+        if (CollUtils.isEmpty(records)) {
+            return;
+        }
+        // 4.批量持久化播放进度数据到数据库
+        // 4.1.更新学习记录的moment
+        recordMapper.updateMomentBatch(records);
+        // 4.2.更新课表最近学习信息
+        lessonMapper.updateLatestLearnBatch(new ArrayList<>(lessons.values()));
+        metrics.recordFlush(records.size(), System.nanoTime() - start);
     }
 
     public void addLearningRecordTask(LearningRecord record){
         // 1.添加数据到Redis缓存
-        writeRecordCache(record);
-        // 2.提交延迟任务到延迟队列 DelayQueue
-        queue.add(new DelayTask<>(new RecordTaskData(record), Duration.ofSeconds(20)));
-    }
-
-    public void writeRecordCache(LearningRecord record) {
-        log.debug("更新学习记录的缓存数据");
-        try {
-            // 1.数据转换
-            String json = JsonUtils.toJsonStr(new RecordCacheData(record));
-            // 2.写入Redis
-            String key = StringUtils.format(RECORD_KEY_TEMPLATE, record.getLessonId());
-            redisTemplate.opsForHash().put(key, record.getSectionId().toString(), json);
-            // 3.添加缓存过期时间
-            redisTemplate.expire(key, Duration.ofMinutes(1));
-        } catch (Exception e) {
-            log.error("更新学习记录缓存异常", e);
+        recordCache.put(record);
+        // 2.提交延迟任务
+        scheduleRecordTask(record);
+    }
+
+    /**
+     * 提交延迟任务到lessonId对应分片的ZSet，score为到期时间
+     * 同一小节重复提交会覆盖到期时间，只有用户停止提交进度后才会到期
+     */
+    public void scheduleRecordTask(LearningRecord record){
+        redisTemplate.opsForZSet().add(
+                shardKeyOf(record.getLessonId()), RecordTaskData.format(record), nextDueTime());
+    }
+
+    /**
+     * 批量提交延迟任务
+     */
+    public void addLearningRecordTasks(List<LearningRecord> records){
+        if (CollUtils.isEmpty(records)) {
+            return;
         }
+        // 1.管道批量添加数据到Redis缓存
+        recordCache.putAll(records);
+        // 2.管道批量提交延迟任务
+        long dueTime = nextDueTime();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection src = (StringRedisConnection) connection;
+            for (LearningRecord record : records) {
+                src.zAdd(shardKeyOf(record.getLessonId()), dueTime, RecordTaskData.format(record));
+            }
+            return null;
+        });
+    }
+
+    private long nextDueTime() {
+        return System.currentTimeMillis()
+                + TimeUnit.SECONDS.toMillis(properties.getRecordTask().getDelaySeconds());
+    }
+
+    private String shardKeyOf(Long lessonId) {
+        return RedisConstants.RECORD_DELAY_KEY_PREFIX + Math.floorMod(lessonId, properties.getRecordTask().getShards());
+    }
+
+    /**
+     * 队列积压数量，各分片之和
+     */
+    public long queueDepth() {
+        return Arrays.stream(shardDepths()).sum();
     }
 
-    public LearningRecord readRecordCache(Long lessonId, Long sectionId){
-        try {
-            // 1.读取Redis数据
-            String key = StringUtils.format(RECORD_KEY_TEMPLATE, lessonId);
-            Object cacheData = redisTemplate.opsForHash().get(key, sectionId.toString());
-            if (cacheData == null) {
-                return null;
+    private long[] shardDepths() {
+        int shards = properties.getRecordTask().getShards();
+        List<Object> sizes = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection src = (StringRedisConnection) connection;
+            for (int i = 0; i < shards; i++) {
+                src.zCard(RedisConstants.RECORD_DELAY_KEY_PREFIX + i);
             }
-            // 2.数据检查和转换
-            return JsonUtils.toBean(cacheData.toString(), LearningRecord.class);
-        } catch (Exception e) {
-            log.error("缓存读取异常", e);
             return null;
-        }
+        });
+        return sizes.stream().mapToLong(o -> o == null ? 0 : (Long) o).toArray();
+    }
+
+    public RecordTaskMetrics getMetrics() {
+        return metrics;
     }
 
-    public void cleanRecordCache(Long lessonId, Long sectionId){
-        // 删除数据
-        String key = StringUtils.format(RECORD_KEY_TEMPLATE, lessonId);
-        redisTemplate.opsForHash().delete(key, sectionId.toString());
+    @Scheduled(fixedRate = 60000)
+    public void reportMetrics() {
+        long[] depths = shardDepths();
+        log.info("学习记录延迟任务统计：队列积压 {} {}，写库批次 {}，写库记录 {}，平均耗时 {}ms，最大耗时 {}ms，缓存命中 {}，未命中 {}",
+                Arrays.stream(depths).sum(), Arrays.toString(depths),
+                metrics.getFlushBatches(), metrics.getFlushRecords(),
+                metrics.getAvgFlushMillis(), metrics.getMaxFlushMillis(),
+                recordCache.getHits(), recordCache.getMisses());
     }
 
-    @Data
-    @NoArgsConstructor
-    private static class RecordCacheData{
-        private Long id;
-        private Integer moment;
-        private Boolean finished;
+    /**
+     * 延迟任务在ZSet中的成员，格式：lessonId:sectionId
+     */
+    private static class RecordTaskData{
+
+        public static String format(LearningRecord record) {
+            return record.getLessonId() + ":" + record.getSectionId();
+        }
 
-        public RecordCacheData(LearningRecord record) {
-            this.id = record.getId();
-            this.moment = record.getMoment();
-            this.finished = record.getFinished();
+        public static LearningRecord parse(String task) {
+            int i = task.indexOf(':');
+            return new LearningRecord()
+                    .setLessonId(Long.valueOf(task.substring(0, i)))
+                    .setSectionId(Long.valueOf(task.substring(i + 1)));
         }
     }
-    @Data
-    @NoArgsConstructor
-    private static class RecordTaskData{
-        private Long lessonId;
-        private Long sectionId;
-        private Integer moment;
-
-        public RecordTaskData(LearningRecord record) {
-            this.lessonId = record.getLessonId();
-            this.sectionId = record.getSectionId();
-            this.moment = record.getMoment();
+
+    /**
+     * 批量写库的统计数据
+     */
+    public static class RecordTaskMetrics {
+        private final LongAdder flushBatches = new LongAdder();
+        private final LongAdder flushRecords = new LongAdder();
+        private final LongAdder flushNanos = new LongAdder();
+        private final AtomicLong maxFlushNanos = new AtomicLong();
+
+        void recordFlush(int records, long nanos) {
+            flushBatches.increment();
+            flushRecords.add(records);
+            flushNanos.add(nanos);
+            maxFlushNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        public long getFlushBatches() {
+            return flushBatches.sum();
+        }
+
+        public long getFlushRecords() {
+            return flushRecords.sum();
+        }
+
+        public long getAvgFlushMillis() {
+            long batches = flushBatches.sum();
+            return batches == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(flushNanos.sum() / batches);
+        }
+
+        public long getMaxFlushMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxFlushNanos.get());
         }
     }
 }
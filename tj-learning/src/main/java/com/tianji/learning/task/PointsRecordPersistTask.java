@@ -0,0 +1,34 @@
+package com.tianji.learning.task;
+
+import com.tianji.common.autoconfigure.redisson.annotations.Lock;
+import com.tianji.common.autoconfigure.redisson.enums.LockStrategy;
+import com.tianji.learning.service.IPointsRecordService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PointsRecordPersistTask {
+    private static final int MAX_BATCH_SIZE = 500;
+
+    private final IPointsRecordService recordService;
+
+    /**
+     * 多实例之间加锁，避免同时写入同一批处理中的积分记录
+     */
+    @Scheduled(fixedDelay = 1000)
+    @Lock(name = "lock:points:record:persist", lockStrategy = LockStrategy.SKIP_FAST)
+    public void persistPointsRecords() {
+        try {
+            // 取满一批说明还有积压，继续处理
+            while (recordService.persistPendingRecords(MAX_BATCH_SIZE) == MAX_BATCH_SIZE) {
+                log.debug("积分记录存在积压，继续批量持久化");
+            }
+        } catch (Exception e) {
+            log.error("批量持久化积分记录异常", e);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.tianji.learning.task;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tianji.api.dto.remark.LikedTimesDTO;
+import com.tianji.common.utils.CollUtils;
+import com.tianji.learning.domain.po.InteractionReply;
+import com.tianji.learning.mapper.InteractionReplyMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 回答点赞数的合并写入
+ * <p>
+ * 点赞数消息是最新的总数，窗口内同一个回答只保留最后一次的值，每个窗口结束时用一条update语句批量写入，
+ * 与上次写入的值相同则跳过
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReplyLikedTimesFlushTask {
+    private static final int MAX_BATCH_SIZE = 500;
+
+    private final InteractionReplyMapper replyMapper;
+    /**
+     * 窗口内待写入的点赞数，key是回答id
+     */
+    private final Map<Long, Integer> pending = new ConcurrentHashMap<>();
+    /**
+     * 最近写入数据库的点赞数，用于跳过没有变化的回答
+     */
+    private final Cache<Long, Integer> lastWritten = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .build();
+
+    public void merge(List<LikedTimesDTO> likedTimesDTOS) {
+        for (LikedTimesDTO dto : likedTimesDTOS) {
+            if (dto.getBizId() == null || dto.getLikedTimes() == null) {
+                continue;
+            }
+            pending.put(dto.getBizId(), dto.getLikedTimes());
+        }
+    }
+
+    @Scheduled(fixedDelay = 1000)
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        // 1.取出窗口内的数据，之后到达的消息进入下一个窗口
+        List<InteractionReply> replies = new ArrayList<>(pending.size());
+        for (Long id : pending.keySet()) {
+            Integer likedTimes = pending.remove(id);
+            if (likedTimes == null || likedTimes.equals(lastWritten.getIfPresent(id))) {
+                continue;
+            }
+            InteractionReply reply = new InteractionReply();
+            reply.setId(id);
+            reply.setLikedTimes(likedTimes);
+            replies.add(reply);
+        }
+        if (CollUtils.isEmpty(replies)) {
+            return;
+        }
+        // 2.分批写入
+        for (List<InteractionReply> batch : CollUtils.split(replies, MAX_BATCH_SIZE)) {
+            try {
+                replyMapper.updateLikedTimesBatch(batch);
+                batch.forEach(r -> lastWritten.put(r.getId(), r.getLikedTimes()));
+            } catch (Exception e) {
+                log.error("批量更新回答点赞数异常，下个窗口重试", e);
+                // 期间收到更新的值则以新值为准
+                batch.forEach(r -> pending.putIfAbsent(r.getId(), r.getLikedTimes()));
+            }
+        }
+        log.debug("批量更新回答点赞数 {} 条", replies.size());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flush();
+    }
+}
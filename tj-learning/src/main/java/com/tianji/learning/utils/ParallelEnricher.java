@@ -0,0 +1,76 @@
+package com.tianji.learning.utils;
+
+import com.tianji.common.utils.UserContext;
+import com.tianji.learning.config.LearningProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 并行查询关联数据的工具
+ * <p>
+ * 相互独立的远程查询同时提交到有界线程池，每个查询都有超时时间，
+ * 超时、异常或线程池已满时返回降级数据，页面只缺少部分关联信息，不会整体失败
+ * </p>
+ */
+@Slf4j
+@Component
+public class ParallelEnricher {
+
+    private final Executor executor;
+    private final LearningProperties properties;
+
+    public ParallelEnricher(@Qualifier("enrichExecutor") Executor executor, LearningProperties properties) {
+        this.executor = executor;
+        this.properties = properties;
+    }
+
+    /**
+     * 异步执行查询
+     * @param name 查询名称，用于日志
+     * @param supplier 查询逻辑
+     * @param fallback 降级数据，查询结果为null时也会返回它
+     */
+    public <T> CompletableFuture<T> supply(String name, Supplier<T> supplier, T fallback) {
+        // 传递当前线程的用户和日志上下文，Feign调用需要
+        Long userId = UserContext.getUser();
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        CompletableFuture<T> future;
+        try {
+            future = CompletableFuture.supplyAsync(() -> {
+                if (userId != null) {
+                    UserContext.setUser(userId);
+                }
+                if (mdc != null) {
+                    MDC.setContextMap(mdc);
+                }
+                try {
+                    return supplier.get();
+                } finally {
+                    UserContext.removeUser();
+                    MDC.clear();
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            log.warn("并行查询{}被拒绝，使用降级数据", name);
+            return CompletableFuture.completedFuture(fallback);
+        }
+        return future
+                .orTimeout(properties.getEnrichTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .handle((result, e) -> {
+                    if (e != null) {
+                        log.warn("并行查询{}失败，使用降级数据，原因：{}", name, e.toString());
+                        return fallback;
+                    }
+                    return result == null ? fallback : result;
+                });
+    }
+}
@@ -0,0 +1,12 @@
+-- 用户id映射为连续的位图偏移量，不存在则分配新的偏移量
+local offset = redis.call('HGET', KEYS[1], ARGV[1])
+if(not offset) then
+    offset = redis.call('INCR', KEYS[2]) - 1
+    redis.call('HSET', KEYS[1], ARGV[1], offset)
+end
+-- 标记每个位图
+for i = 3, #KEYS do
+    redis.call('SETBIT', KEYS[i], offset, 1)
+    redis.call('EXPIRE', KEYS[i], ARGV[2])
+end
+return tonumber(offset)
@@ -0,0 +1,6 @@
+-- 结果位图已存在则直接统计
+if(redis.call('EXISTS', KEYS[1]) == 0) then
+    redis.call('BITOP', ARGV[1], KEYS[1], unpack(KEYS, 2))
+    redis.call('EXPIRE', KEYS[1], ARGV[2])
+end
+return redis.call('BITCOUNT', KEYS[1])
@@ -0,0 +1,8 @@
+-- 上次取出的数据还未确认，继续返回，否则把待处理的Hash改名为处理中
+if(redis.call('EXISTS', KEYS[2]) == 0) then
+    if(redis.call('EXISTS', KEYS[1]) == 0) then
+        return {}
+    end
+    redis.call('RENAME', KEYS[1], KEYS[2])
+end
+return redis.call('HGETALL', KEYS[2])
@@ -0,0 +1,11 @@
+-- 上次取出的数据还未确认，继续返回，否则从待处理列表移动一批到处理中列表
+local items = redis.call('LRANGE', KEYS[2], 0, -1)
+if(#items > 0) then
+    return items
+end
+items = redis.call('LRANGE', KEYS[1], 0, tonumber(ARGV[1]) - 1)
+if(#items > 0) then
+    redis.call('LTRIM', KEYS[1], #items, -1)
+    redis.call('RPUSH', KEYS[2], unpack(items))
+end
+return items
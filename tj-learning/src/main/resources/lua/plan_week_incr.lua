@@ -0,0 +1,9 @@
+-- 已初始化则累加；未初始化则只增加版本号，正在从数据库统计的结果作废，下次查询重新统计
+if(redis.call('HEXISTS', KEYS[1], 'finished') == 0) then
+    redis.call('HINCRBY', KEYS[1], 'ver', 1)
+    redis.call('EXPIRE', KEYS[1], ARGV[3])
+    return 0
+end
+redis.call('HINCRBY', KEYS[1], 'finished', ARGV[2])
+redis.call('HINCRBY', KEYS[1], 'l:' .. ARGV[1], ARGV[2])
+return 1
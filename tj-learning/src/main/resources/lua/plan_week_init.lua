@@ -0,0 +1,16 @@
+-- 已经初始化过则不覆盖，期间的增量已经累加在上面
+if(redis.call('HEXISTS', KEYS[1], 'finished') == 1) then
+    return 0
+end
+-- 统计期间有新的增量，版本号变化，统计结果可能不包含这些增量，放弃初始化
+local ver = redis.call('HGET', KEYS[1], 'ver') or '0'
+if(ver ~= ARGV[2]) then
+    return 0
+end
+-- 还有积分记录未写入数据库，统计结果不包含这些积分，放弃初始化
+if(tonumber(redis.call('HGET', KEYS[1], 'pending') or '0') > 0) then
+    return 0
+end
+redis.call('HSET', KEYS[1], unpack(ARGV, 3))
+redis.call('EXPIRE', KEYS[1], ARGV[1])
+return 1
@@ -0,0 +1,8 @@
+-- 未初始化时发放的积分记录已写入数据库，减少待持久化的记录数，
+-- 同时增加版本号，写入数据库之前开始的统计结果作废。Key已过期则忽略
+if(redis.call('EXISTS', KEYS[1]) == 0) then
+    return 0
+end
+redis.call('HINCRBY', KEYS[1], 'pending', 0 - tonumber(ARGV[1]))
+redis.call('HINCRBY', KEYS[1], 'ver', 1)
+return 1
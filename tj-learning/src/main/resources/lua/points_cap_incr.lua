@@ -0,0 +1,41 @@
+local points = tonumber(ARGV[2])
+-- 批量消费时按消息去重，KEYS[5]开始是各消息的去重Key，ARGV[8]开始是对应消息的积分，重复投递的消息不再发放
+if(#KEYS > 4) then
+    points = 0
+    for i = 5, #KEYS do
+        if(redis.call('SET', KEYS[i], 1, 'NX', 'EX', ARGV[7])) then
+            points = points + tonumber(ARGV[i + 3])
+        end
+    end
+    if(points == 0) then
+        return 0
+    end
+end
+local max = tonumber(ARGV[3])
+if(max > 0) then
+    local current = tonumber(redis.call('HGET', KEYS[1], ARGV[1]) or '0')
+    if(current >= max) then
+        return 0
+    end
+    if(current + points > max) then
+        points = max - current
+    end
+end
+redis.call('HINCRBY', KEYS[1], ARGV[1], points)
+redis.call('EXPIRE', KEYS[1], ARGV[4])
+redis.call('ZINCRBY', KEYS[2], points, ARGV[5])
+-- 累加本周学习计划统计中的积分，未初始化则增加版本号和待持久化的积分记录数，
+-- 积分记录写入数据库之前不能用数据库的统计结果初始化，记录末尾加上标记，持久化后减少计数
+local entry = ARGV[5] .. '|' .. ARGV[1] .. '|' .. points .. '|' .. ARGV[6]
+if(KEYS[4]) then
+    if(redis.call('HEXISTS', KEYS[4], 'finished') == 1) then
+        redis.call('HINCRBY', KEYS[4], 'points', points)
+    else
+        redis.call('HINCRBY', KEYS[4], 'ver', 1)
+        redis.call('HINCRBY', KEYS[4], 'pending', 1)
+        redis.call('EXPIRE', KEYS[4], ARGV[4])
+        entry = entry .. '|1'
+    end
+end
+redis.call('RPUSH', KEYS[3], entry)
+return points
@@ -0,0 +1,18 @@
+local old = redis.call('HGET', KEYS[1], ARGV[1])
+if(not old) then
+    return nil
+end
+-- 格式错误的缓存按未命中处理，由调用方查询数据库后覆盖
+local i = string.find(old, '|', 1, true)
+if(not i) then
+    return nil
+end
+local j = string.find(old, '|', i + 1, true)
+if(not j) then
+    return nil
+end
+if(string.sub(old, i + 1, j - 1) ~= ARGV[2]) then
+    redis.call('HSET', KEYS[1], ARGV[1], string.sub(old, 1, i) .. ARGV[2] .. string.sub(old, j))
+end
+redis.call('EXPIRE', KEYS[1], ARGV[3])
+return old
@@ -0,0 +1,5 @@
+local tasks = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2])
+if(#tasks > 0) then
+    redis.call('ZREM', KEYS[1], unpack(tasks))
+end
+return tasks
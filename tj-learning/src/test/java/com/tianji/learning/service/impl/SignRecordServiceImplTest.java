@@ -0,0 +1,223 @@
+package com.tianji.learning.service.impl;
+
+import com.tianji.common.utils.DateUtils;
+import com.tianji.common.utils.UserContext;
+import com.tianji.learning.constants.RedisConstants;
+import com.tianji.learning.domain.vo.SignStatsVO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 签到统计的BITFIELD位运算与逐天读取签到位的结果对比
+ */
+class SignRecordServiceImplTest {
+
+    private static final Long USER_ID = 1L;
+    private static final int MONTHS = 6;
+    private static final int ROUNDS = 2000;
+
+    /**
+     * 模拟Redis中的签到位图，key是签到Key，value的第n位代表n+1号
+     */
+    private final Map<String, boolean[]> bitmaps = new HashMap<>();
+    private SignRecordServiceImpl signService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> valueOps = mock(ValueOperations.class);
+        StringRedisConnection connection = mock(StringRedisConnection.class);
+        List<Object> pipelineResults = new ArrayList<>();
+        // 管道中的命令按顺序记录结果
+        when(connection.bitfield(anyString(), any(BitFieldSubCommands.class))).thenAnswer(inv -> {
+            pipelineResults.add(bitField(inv.getArgument(0), inv.getArgument(1)));
+            return null;
+        });
+        when(connection.bitCount(anyString())).thenAnswer(inv -> {
+            pipelineResults.add(bitCount(inv.getArgument(0)));
+            return null;
+        });
+        when(connection.bitPos(anyString(), anyBoolean())).thenAnswer(inv -> {
+            pipelineResults.add(bitPos(inv.getArgument(0)));
+            return null;
+        });
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(inv -> {
+            pipelineResults.clear();
+            inv.<RedisCallback<Object>>getArgument(0).doInRedis(connection);
+            return new ArrayList<>(pipelineResults);
+        });
+        when(redisTemplate.opsForValue()).thenReturn(valueOps);
+        when(valueOps.bitField(anyString(), any(BitFieldSubCommands.class)))
+                .thenAnswer(inv -> bitField(inv.getArgument(0), inv.getArgument(1)));
+        signService = new SignRecordServiceImpl(redisTemplate, null, null);
+        UserContext.setUser(USER_ID);
+    }
+
+    @AfterEach
+    void tearDown() {
+        UserContext.removeUser();
+    }
+
+    @Test
+    void testSignStatsMatchPerDayBits() {
+        Random random = new Random(20240101L);
+        LocalDate today = LocalDate.now();
+        YearMonth thisMonth = YearMonth.from(today);
+        for (int round = 0; round < ROUNDS; round++) {
+            // 1.随机生成最近几个月的签到记录，部分月份整月签到，覆盖跨月连续签到
+            bitmaps.clear();
+            for (int i = 0; i < MONTHS; i++) {
+                YearMonth ym = thisMonth.minusMonths(i);
+                int days = ym.equals(thisMonth) ? today.getDayOfMonth() : ym.lengthOfMonth();
+                boolean full = random.nextInt(3) == 0;
+                double density = random.nextDouble();
+                boolean[] bits = new boolean[ym.lengthOfMonth()];
+                for (int d = 0; d < days; d++) {
+                    bits[d] = full || random.nextDouble() < density;
+                }
+                bitmaps.put(keyOf(ym), bits);
+            }
+            // 2.逐月对比
+            for (int i = 0; i < MONTHS - 1; i++) {
+                YearMonth ym = thisMonth.minusMonths(i);
+                int len = ym.equals(thisMonth) ? today.getDayOfMonth() : ym.lengthOfMonth();
+                SignStatsVO vo = signService.querySignStats(ym.format(DateUtils.POINTS_BOARD_SUFFIX_FORMATTER));
+                String msg = "round " + round + ", month " + ym;
+                assertEquals(len, vo.getDays(), msg);
+                assertEquals(expectedMask(ym, len), vo.getSignMask(), msg);
+                assertEquals(expectedCount(ym), vo.getSignCount(), msg);
+                assertEquals(expectedFirstDay(ym), vo.getFirstSignDay(), msg);
+                assertEquals(expectedCurrentStreak(ym, len), vo.getCurrentStreak(), msg);
+                assertEquals(expectedLongestStreak(ym, len), vo.getLongestStreak(), msg);
+            }
+        }
+    }
+
+    // ------------------------------ 逐天读取签到位的实现 ------------------------------
+
+    private boolean getBit(YearMonth ym, int day) {
+        boolean[] bits = bitmaps.get(keyOf(ym));
+        return bits != null && day >= 1 && day <= bits.length && bits[day - 1];
+    }
+
+    private int expectedMask(YearMonth ym, int len) {
+        int mask = 0;
+        for (int day = 1; day <= len; day++) {
+            if (getBit(ym, day)) {
+                mask |= 1 << (day - 1);
+            }
+        }
+        return mask;
+    }
+
+    private int expectedCount(YearMonth ym) {
+        int count = 0;
+        for (int day = 1; day <= ym.lengthOfMonth(); day++) {
+            if (getBit(ym, day)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Integer expectedFirstDay(YearMonth ym) {
+        for (int day = 1; day <= ym.lengthOfMonth(); day++) {
+            if (getBit(ym, day)) {
+                return day;
+            }
+        }
+        return null;
+    }
+
+    private int expectedCurrentStreak(YearMonth ym, int len) {
+        // 从最后一天逐天向前，跨月继续，直到遇到未签到的一天
+        int streak = 0;
+        int day = len;
+        while (getBit(ym, day)) {
+            streak++;
+            day--;
+            if (day == 0) {
+                ym = ym.minusMonths(1);
+                day = ym.lengthOfMonth();
+            }
+        }
+        return streak;
+    }
+
+    private int expectedLongestStreak(YearMonth ym, int len) {
+        int longest = 0;
+        int current = 0;
+        for (int day = 1; day <= len; day++) {
+            current = getBit(ym, day) ? current + 1 : 0;
+            longest = Math.max(longest, current);
+        }
+        return longest;
+    }
+
+    // ------------------------------ 模拟Redis位图命令 ------------------------------
+
+    /**
+     * BITFIELD key GET u{len} 0，第一位是返回值的最高位
+     */
+    private List<Long> bitField(String key, BitFieldSubCommands commands) {
+        int len = commands.getSubCommands().get(0).getType().getBits();
+        boolean[] bits = bitmaps.get(key);
+        long value = 0;
+        for (int i = 0; i < len; i++) {
+            value <<= 1;
+            if (bits != null && i < bits.length && bits[i]) {
+                value |= 1;
+            }
+        }
+        return List.of(value);
+    }
+
+    private Long bitCount(String key) {
+        boolean[] bits = bitmaps.get(key);
+        long count = 0;
+        if (bits != null) {
+            for (boolean bit : bits) {
+                count += bit ? 1 : 0;
+            }
+        }
+        return count;
+    }
+
+    private Long bitPos(String key) {
+        boolean[] bits = bitmaps.get(key);
+        if (bits != null) {
+            for (int i = 0; i < bits.length; i++) {
+                if (bits[i]) {
+                    return (long) i;
+                }
+            }
+        }
+        return -1L;
+    }
+
+    private static String keyOf(YearMonth ym) {
+        return RedisConstants.SIGN_RECORD_KEY_PREFIX + USER_ID + ym.format(DateUtils.SIGN_DATE_SUFFIX_FORMATTER);
+    }
+}
@@ -0,0 +1,64 @@
+package com.tianji.promotion.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tianji.common.utils.CollUtils;
+import com.tianji.promotion.domain.po.CouponScope;
+import com.tianji.promotion.service.ICouponScopeService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * 优惠券限定范围的本地缓存
+ * <p>
+ * key是优惠券id，value是适用的分类id。未命中的券通过一次in查询批量加载，没有限定范围的券缓存为空集合。
+ * 限定范围变更时通过MQ广播，各实例删除对应的缓存
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CouponScopeCache {
+
+    private final ICouponScopeService scopeService;
+
+    private final Cache<Long, Set<Long>> scopeCaches = Caffeine.newBuilder()
+            .initialCapacity(256)
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(30))
+            .build();
+
+    /**
+     * 批量查询优惠券的适用分类
+     * @return key是优惠券id，value是适用的分类id
+     */
+    public Map<Long, Set<Long>> getScopes(Collection<Long> couponIds) {
+        if (CollUtils.isEmpty(couponIds)) {
+            return CollUtils.emptyMap();
+        }
+        return scopeCaches.getAll(new HashSet<>(couponIds), ids -> {
+            // 1.批量查询未命中的券
+            List<Long> missingIds = new ArrayList<>();
+            ids.forEach(missingIds::add);
+            List<CouponScope> scopes = scopeService.lambdaQuery().in(CouponScope::getCouponId, missingIds).list();
+            // 2.按券分组，没有限定范围的券也要缓存，避免重复查询
+            Map<Long, Set<Long>> map = new HashMap<>(missingIds.size());
+            for (Long id : missingIds) {
+                map.put(id, new HashSet<>());
+            }
+            for (CouponScope scope : scopes) {
+                map.get(scope.getCouponId()).add(scope.getBizId());
+            }
+            return map;
+        });
+    }
+
+    public void invalidate(Long couponId) {
+        log.debug("删除优惠券{}的限定范围缓存", couponId);
+        scopeCaches.invalidate(couponId);
+    }
+}
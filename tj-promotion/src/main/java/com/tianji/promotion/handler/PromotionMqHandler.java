@@ -1,5 +1,6 @@
 package com.tianji.promotion.handler;
 
+import com.tianji.promotion.cache.CouponScopeCache;
 import com.tianji.promotion.domain.dto.UserCouponDTO;
 import com.tianji.promotion.service.IUserCouponService;
 import lombok.RequiredArgsConstructor;
@@ -12,12 +13,14 @@ import org.springframework.stereotype.Component;
 
 import static com.tianji.common.constants.MqConstants.Exchange.PROMOTION_EXCHANGE;
 import static com.tianji.common.constants.MqConstants.Key.COUPON_RECEIVE;
+import static com.tianji.common.constants.MqConstants.Key.COUPON_SCOPE_CHANGED;
 
 @Component
 @RequiredArgsConstructor
 public class PromotionMqHandler {
 
     private final IUserCouponService userCouponService;
+    private final CouponScopeCache scopeCache;
 
     @RabbitListener(bindings = @QueueBinding(
             value = @Queue(name = "coupon.receive.queue", durable = "true"),
@@ -27,4 +30,16 @@ public class PromotionMqHandler {
     public void listenCouponReceiveMessage(UserCouponDTO uc) {
         userCouponService.checkAndCreateUserCoupon(uc);
     }
+
+    /**
+     * 优惠券限定范围变更，每个实例一个匿名队列，都能收到消息并删除本地缓存
+     */
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue,
+            exchange = @Exchange(name = PROMOTION_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = COUPON_SCOPE_CHANGED
+    ))
+    public void listenCouponScopeChangedMessage(Long couponId) {
+        scopeCache.invalidate(couponId);
+    }
 }
@@ -4,6 +4,8 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.tianji.api.cache.CategoryCache;
+import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
+import com.tianji.common.constants.MqConstants;
 import com.tianji.common.domain.dto.PageDTO;
 import com.tianji.common.exceptions.BadRequestException;
 import com.tianji.common.exceptions.BizIllegalException;
@@ -57,6 +59,7 @@ public class CouponServiceImpl extends ServiceImpl<CouponMapper, Coupon> impleme
     private final CategoryCache categoryCache;
     private final StringRedisTemplate redisTemplate;
     private final IUserCouponService userCouponService;
+    private final RabbitMqHelper mqHelper;
 
     @Override
     public void saveCoupon(CouponFormDTO dto) {
@@ -75,6 +78,14 @@ public class CouponServiceImpl extends ServiceImpl<CouponMapper, Coupon> impleme
                 .map(bizId -> new CouponScope().setBizId(bizId).setCouponId(couponId))
                 .collect(Collectors.toList());
         scopeService.saveBatch(list);
+        publishScopeChanged(couponId);
+    }
+
+    /**
+     * 通知各实例删除优惠券限定范围的本地缓存
+     */
+    private void publishScopeChanged(Long couponId) {
+        mqHelper.send(MqConstants.Exchange.PROMOTION_EXCHANGE, MqConstants.Key.COUPON_SCOPE_CHANGED, couponId);
     }
 
     @Override
@@ -160,6 +171,7 @@ public class CouponServiceImpl extends ServiceImpl<CouponMapper, Coupon> impleme
             return;
         }
         scopeService.remove(new LambdaQueryWrapper<CouponScope>().eq(CouponScope::getCouponId, id));
+        publishScopeChanged(id);
     }
 
     @Override
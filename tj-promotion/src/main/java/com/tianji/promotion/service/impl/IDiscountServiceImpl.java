@@ -5,32 +5,28 @@ import com.tianji.api.dto.promotion.OrderCouponDTO;
 import com.tianji.api.dto.promotion.OrderCourseDTO;
 import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.UserContext;
+import com.tianji.promotion.cache.CouponScopeCache;
 import com.tianji.promotion.domain.po.Coupon;
-import com.tianji.promotion.domain.po.CouponScope;
 import com.tianji.promotion.enums.UserCouponStatus;
 import com.tianji.promotion.mapper.UserCouponMapper;
-import com.tianji.promotion.service.ICouponScopeService;
 import com.tianji.promotion.service.IDiscountService;
 import com.tianji.promotion.strategy.discount.Discount;
 import com.tianji.promotion.strategy.discount.DiscountStrategy;
-import com.tianji.promotion.utils.PermuteUtil;
+import com.tianji.promotion.utils.DiscountSolutionSearcher;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.Executor;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+@Service
 @RequiredArgsConstructor
 @Slf4j
 public class IDiscountServiceImpl implements IDiscountService {
 
     private final UserCouponMapper userCouponMapper;
-    private final ICouponScopeService scopeService;
-    private final Executor discountSolutionExecutor;
+    private final CouponScopeCache scopeCache;
 
     @Override
     public List<CouponDiscountDTO> findDiscountSolution(List<OrderCourseDTO> orderCourses) {
@@ -54,33 +50,12 @@ public class IDiscountServiceImpl implements IDiscountService {
         if (CollUtils.isEmpty(availableCouponMap)) {
             return CollUtils.emptyList();
         }
-        // 优惠方案全排列组合
-        availableCoupons = new ArrayList<>(availableCouponMap.keySet());
-        List<List<Coupon>> solutions = PermuteUtil.permute(availableCoupons);
-        // 添加单券方案
-        for (Coupon c : availableCoupons) {
-            solutions.add(List.of(c));
-        }
+        // 搜索优惠方案，每种用券组合只保留优惠最大的顺序，另外包含单券方案
+        List<List<Coupon>> solutions = DiscountSolutionSearcher.search(availableCouponMap, orderCourses);
         // 计算方案的优惠明细
-        List<CouponDiscountDTO> list = Collections.synchronizedList(new ArrayList<>(solutions.size()));
-        // 定义闭锁
-        CountDownLatch latch = new CountDownLatch(solutions.size());
+        List<CouponDiscountDTO> list = new ArrayList<>(solutions.size());
         for (List<Coupon> solution : solutions) {
-            // 异步计算
-            CompletableFuture.supplyAsync(
-                    () -> calculateSolutionDiscount(availableCouponMap, orderCourses, solution),
-                    discountSolutionExecutor
-            ).thenAccept(dto -> {
-                // 提交任务结果
-                list.add(dto);
-                latch.countDown();
-            });
-        }
-        // 等待运算结束
-        try {
-            latch.await(1, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            log.error("优惠方案计算被中断，{}", e.getMessage());
+            list.add(calculateSolutionDiscount(availableCouponMap, orderCourses, solution));
         }
         // 5.筛选最优解
         return findBestSolution(list);
@@ -104,14 +79,17 @@ public class IDiscountServiceImpl implements IDiscountService {
     }
 
     private Map<Coupon, List<OrderCourseDTO>> findAvailableCoupon(List<Coupon> coupons, List<OrderCourseDTO> courses) {
+        // 批量查询限定范围的券的适用分类
+        Map<Long, Set<Long>> scopeMap = scopeCache.getScopes(coupons.stream()
+                .filter(Coupon::getSpecific)
+                .map(Coupon::getId)
+                .collect(Collectors.toSet()));
         Map<Coupon, List<OrderCourseDTO>> map = new HashMap<>(coupons.size());
         for (Coupon coupon : coupons) {
             List<OrderCourseDTO> availableCoupons = courses;
             if (coupon.getSpecific()) {
-                // 查询适用范围
-                List<CouponScope> scopes = scopeService.lambdaQuery().eq(CouponScope::getCouponId, coupon.getId()).list();
                 // 获取分类id
-                Set<Long> cateIds = scopes.stream().map(CouponScope::getBizId).collect(Collectors.toSet());
+                Set<Long> cateIds = scopeMap.getOrDefault(coupon.getId(), CollUtils.emptySet());
                 // 过滤课程表
                 availableCoupons = courses.stream().filter(c -> cateIds.contains(c.getCateId())).collect(Collectors.toList());
             }
@@ -141,7 +119,7 @@ public class IDiscountServiceImpl implements IDiscountService {
             int totalAmount = availableCourses.stream().mapToInt(oc -> oc.getPrice() - detailMap.get(oc.getId())).sum();
             // 判断是否可用
             Discount discount = DiscountStrategy.getDiscount(coupon.getDiscountType());
-            boolean canUse = discount.canUse(totalAmount, coupon);
+            boolean canUse = totalAmount > 0 && discount.canUse(totalAmount, coupon);
             if (!canUse) {
                 continue;
             }
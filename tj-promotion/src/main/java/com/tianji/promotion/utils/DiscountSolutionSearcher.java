@@ -0,0 +1,265 @@
+package com.tianji.promotion.utils;
+
+import com.tianji.api.dto.promotion.OrderCourseDTO;
+import com.tianji.promotion.domain.po.Coupon;
+import com.tianji.promotion.strategy.discount.Discount;
+import com.tianji.promotion.strategy.discount.DiscountStrategy;
+
+import java.util.*;
+
+/**
+ * 优惠方案搜索工具类
+ * <p>
+ * 优惠券按顺序叠加使用，每张券以前面的券优惠后的课程价格判断门槛、计算优惠。
+ * 叠加优惠只会让课程总价降低，而券的门槛都是总价的下限，当前不可用的券之后也不会再变为可用，
+ * 所以全排列中被跳过的券不影响结果。搜索以已使用的券和各课程已优惠金额为状态，每次叠加一张当前可用的券，
+ * 不同顺序到达的相同状态只展开一次，没有可用券时得到一个方案，另外加上每张券单独使用的方案。
+ * </p>
+ * <p>
+ * 券数量不超过{@value #EXACT_COUPON_SIZE}张时结果与全排列一致。超过时按已找到的最大优惠剪枝，
+ * 并限制展开的状态数量，超出后按贪心补全方案
+ * </p>
+ */
+public class DiscountSolutionSearcher {
+
+    /**
+     * 不剪枝、结果与全排列一致的最大券数量
+     */
+    private static final int EXACT_COUPON_SIZE = 8;
+    /**
+     * 参与搜索的最大券数量，超过时保留单独使用优惠最大的券
+     */
+    private static final int MAX_COUPON_SIZE = 63;
+    /**
+     * 最多展开的状态数量
+     */
+    private static final int MAX_STATES = 100_000;
+
+    private final List<Coupon> coupons;
+    private final Discount[] discounts;
+    /**
+     * 每张券适用课程的下标，顺序与券的适用课程列表一致
+     */
+    private final int[][] couponCourses;
+    private final int[] prices;
+    private final boolean prune;
+    private final Set<State> visited = new HashSet<>();
+    /**
+     * 每种用券组合下优惠最大的方案，key是券的位图
+     */
+    private final Map<Long, Solution> bestSolutions = new HashMap<>();
+    private int bestDiscount;
+
+    private DiscountSolutionSearcher(Map<Coupon, List<OrderCourseDTO>> couponMap, List<OrderCourseDTO> courses) {
+        Map<Long, Integer> courseIndexes = new HashMap<>(courses.size());
+        prices = new int[courses.size()];
+        for (int i = 0; i < courses.size(); i++) {
+            courseIndexes.put(courses.get(i).getId(), i);
+            prices[i] = courses.get(i).getPrice();
+        }
+        List<Coupon> list = new ArrayList<>(couponMap.keySet());
+        if (list.size() > MAX_COUPON_SIZE) {
+            // 券太多时保留单独使用优惠最大的券
+            list.sort(Comparator.comparingInt((Coupon c) -> {
+                int total = couponMap.get(c).stream().mapToInt(OrderCourseDTO::getPrice).sum();
+                return DiscountStrategy.getDiscount(c.getDiscountType()).calculateDiscount(total, c);
+            }).reversed());
+            list = list.subList(0, MAX_COUPON_SIZE);
+        }
+        coupons = list;
+        discounts = new Discount[list.size()];
+        couponCourses = new int[list.size()][];
+        for (int i = 0; i < list.size(); i++) {
+            Coupon coupon = list.get(i);
+            discounts[i] = DiscountStrategy.getDiscount(coupon.getDiscountType());
+            couponCourses[i] = couponMap.get(coupon).stream().mapToInt(c -> courseIndexes.get(c.getId())).toArray();
+        }
+        prune = list.size() > EXACT_COUPON_SIZE;
+    }
+
+    /**
+     * 搜索优惠方案
+     *
+     * @param couponMap 可用的券及其适用的课程
+     * @param courses   订单中的课程
+     * @return 优惠方案，每个方案是券的使用顺序
+     */
+    public static List<List<Coupon>> search(Map<Coupon, List<OrderCourseDTO>> couponMap, List<OrderCourseDTO> courses) {
+        return new DiscountSolutionSearcher(couponMap, courses).search();
+    }
+
+    private List<List<Coupon>> search() {
+        int n = coupons.size();
+        int[] detail = new int[prices.length];
+        List<List<Coupon>> solutions = new ArrayList<>();
+        // 1.单券方案
+        for (int i = 0; i < n; i++) {
+            if (tryDiscount(i, detail) != null) {
+                solutions.add(List.of(coupons.get(i)));
+            }
+        }
+        // 2.叠加用券的方案
+        dfs(0L, detail, 0, new int[n], 0);
+        for (Solution s : bestSolutions.values()) {
+            List<Coupon> solution = new ArrayList<>(s.path.length);
+            for (int i : s.path) {
+                solution.add(coupons.get(i));
+            }
+            solutions.add(solution);
+        }
+        return solutions;
+    }
+
+    /**
+     * @param used 已使用的券的位图
+     */
+    private void dfs(long used, int[] detail, int discount, int[] path, int depth) {
+        if (!visited.add(new State(used, detail))) {
+            // 其它顺序已经到达过相同的状态
+            return;
+        }
+        // 1.找出当前可用的券
+        List<int[]> candidates = findCandidates(used, detail);
+        if (candidates.isEmpty()) {
+            record(used, path, depth, discount);
+            return;
+        }
+        // 2.剪枝，之后每张券的优惠都不会超过当前的优惠
+        if (prune) {
+            int upperBound = discount;
+            for (int[] c : candidates) {
+                upperBound += c[2];
+            }
+            if (upperBound < bestDiscount) {
+                return;
+            }
+        }
+        // 3.剪枝时状态数量超出限制，按贪心补全方案
+        if (prune && visited.size() > MAX_STATES) {
+            completeGreedily(used, detail, discount, path, depth, candidates);
+            return;
+        }
+        // 4.叠加可用的券，优先尝试优惠大的券，尽早找到较优的方案
+        candidates.sort((a, b) -> Integer.compare(b[2], a[2]));
+        for (int[] c : candidates) {
+            path[depth] = c[0];
+            dfs(used | 1L << c[0], apply(c, detail), discount + c[2], path, depth + 1);
+        }
+    }
+
+    private void completeGreedily(long used, int[] detail, int discount, int[] path, int depth,
+                                  List<int[]> candidates) {
+        while (!candidates.isEmpty()) {
+            int[] best = Collections.max(candidates, Comparator.comparingInt(c -> c[2]));
+            path[depth++] = best[0];
+            used |= 1L << best[0];
+            detail = apply(best, detail);
+            discount += best[2];
+            candidates = findCandidates(used, detail);
+        }
+        record(used, path, depth, discount);
+    }
+
+    /**
+     * @return 可用的券，每个元素是：券下标，适用课程的总价，优惠金额
+     */
+    private List<int[]> findCandidates(long used, int[] detail) {
+        List<int[]> candidates = new ArrayList<>();
+        for (int i = 0; i < coupons.size(); i++) {
+            if ((used & 1L << i) != 0) {
+                continue;
+            }
+            int[] c = tryDiscount(i, detail);
+            if (c != null) {
+                candidates.add(c);
+            }
+        }
+        return candidates;
+    }
+
+    private int[] tryDiscount(int i, int[] detail) {
+        // 计算课程总价(课程原价 - 折扣明细)
+        int totalAmount = 0;
+        for (int c : couponCourses[i]) {
+            totalAmount += prices[c] - detail[c];
+        }
+        Coupon coupon = coupons.get(i);
+        if (totalAmount <= 0 || !discounts[i].canUse(totalAmount, coupon)) {
+            return null;
+        }
+        return new int[]{i, totalAmount, discounts[i].calculateDiscount(totalAmount, coupon)};
+    }
+
+    /**
+     * 按课程原价比例分摊优惠金额，最后一个课程分摊剩余金额，与下单时的计算方式一致
+     */
+    private int[] apply(int[] candidate, int[] detail) {
+        int[] next = detail.clone();
+        int[] courses = couponCourses[candidate[0]];
+        int totalAmount = candidate[1];
+        int discountAmount = candidate[2];
+        int remainDiscount = discountAmount;
+        for (int i = 0; i < courses.length; i++) {
+            int c = courses[i];
+            int discount;
+            if (i == courses.length - 1) {
+                discount = remainDiscount;
+            } else {
+                discount = discountAmount * prices[c] / totalAmount;
+                remainDiscount -= discount;
+            }
+            next[c] += discount;
+        }
+        return next;
+    }
+
+    private void record(long used, int[] path, int depth, int discount) {
+        bestDiscount = Math.max(bestDiscount, discount);
+        Solution old = bestSolutions.get(used);
+        if (old == null || old.discount < discount) {
+            bestSolutions.put(used, new Solution(Arrays.copyOf(path, depth), discount));
+        }
+    }
+
+    private static class Solution {
+        private final int[] path;
+        private final int discount;
+
+        Solution(int[] path, int discount) {
+            this.path = path;
+            this.discount = discount;
+        }
+    }
+
+    /**
+     * 搜索状态：已使用的券和各课程已优惠的金额
+     */
+    private static class State {
+        private final long used;
+        private final int[] detail;
+        private final int hash;
+
+        State(long used, int[] detail) {
+            this.used = used;
+            this.detail = detail;
+            this.hash = 31 * Long.hashCode(used) + Arrays.hashCode(detail);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof State)) {
+                return false;
+            }
+            State s = (State) o;
+            return used == s.used && Arrays.equals(detail, s.detail);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
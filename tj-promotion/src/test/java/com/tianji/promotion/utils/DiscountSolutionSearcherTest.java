@@ -0,0 +1,169 @@
+package com.tianji.promotion.utils;
+
+import com.tianji.api.dto.promotion.OrderCourseDTO;
+import com.tianji.promotion.domain.po.Coupon;
+import com.tianji.promotion.enums.DiscountType;
+import com.tianji.promotion.strategy.discount.Discount;
+import com.tianji.promotion.strategy.discount.DiscountStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 优惠方案搜索与全排列的结果对比
+ */
+class DiscountSolutionSearcherTest {
+
+    private static final int ROUNDS = 500;
+    private static final DiscountType[] TYPES = DiscountType.values();
+
+    @Test
+    void testBestDiscountPerCouponSetMatchesPermutation() {
+        Random random = new Random(20240801L);
+        for (int round = 0; round < ROUNDS; round++) {
+            // 1.随机生成课程和券，不超过不剪枝的券数量
+            List<OrderCourseDTO> courses = randomCourses(random, 1 + random.nextInt(4));
+            Map<Coupon, List<OrderCourseDTO>> couponMap = randomCouponMap(random, courses, 1 + random.nextInt(8));
+            List<Coupon> coupons = new ArrayList<>(couponMap.keySet());
+            // 2.全排列，加上单券方案，与原来的实现一致
+            List<List<Coupon>> permutations = PermuteUtil.permute(coupons);
+            for (Coupon c : coupons) {
+                permutations.add(List.of(c));
+            }
+            Map<Long, Integer> expected = bestDiscountPerCouponSet(couponMap, courses, coupons, permutations);
+            // 3.搜索结果中每种用券组合的最大优惠与全排列一致
+            List<List<Coupon>> solutions = DiscountSolutionSearcher.search(couponMap, courses);
+            Map<Long, Integer> actual = bestDiscountPerCouponSet(couponMap, courses, coupons, solutions);
+            assertEquals(expected, actual, "round " + round);
+        }
+    }
+
+    @Test
+    void testManyCouponsFinishInTime() {
+        Random random = new Random(20240802L);
+        for (int round = 0; round < 20; round++) {
+            List<OrderCourseDTO> courses = randomCourses(random, 3 + random.nextInt(4));
+            Map<Coupon, List<OrderCourseDTO>> couponMap = randomCouponMap(random, courses, 20 + random.nextInt(11));
+            List<Coupon> coupons = new ArrayList<>(couponMap.keySet());
+            List<List<Coupon>> solutions = assertTimeoutPreemptively(Duration.ofSeconds(2),
+                    () -> DiscountSolutionSearcher.search(couponMap, courses), "round " + round);
+            // 每个方案中的券按顺序都可用，且不少于单券方案的最大优惠
+            assertFalse(solutions.isEmpty(), "round " + round);
+            int bestSingle = 0;
+            int best = 0;
+            for (List<Coupon> solution : solutions) {
+                int[] result = simulate(couponMap, courses, coupons, solution);
+                assertEquals(Integer.bitCount(result[0]), solution.size(), "round " + round);
+                best = Math.max(best, result[1]);
+                if (solution.size() == 1) {
+                    bestSingle = Math.max(bestSingle, result[1]);
+                }
+            }
+            assertTrue(best >= bestSingle, "round " + round);
+        }
+    }
+
+    private static List<OrderCourseDTO> randomCourses(Random random, int size) {
+        List<OrderCourseDTO> courses = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            courses.add(new OrderCourseDTO()
+                    .setId(i + 1L)
+                    .setCateId((long) random.nextInt(3))
+                    .setPrice(1000 + random.nextInt(20000)));
+        }
+        return courses;
+    }
+
+    /**
+     * 随机生成指定数量的券和适用的课程，与下单时一样只保留按原价可用的券
+     */
+    private static Map<Coupon, List<OrderCourseDTO>> randomCouponMap(
+            Random random, List<OrderCourseDTO> courses, int size) {
+        Map<Coupon, List<OrderCourseDTO>> couponMap = new HashMap<>(size);
+        for (int i = 0; couponMap.size() < size; i++) {
+            DiscountType type = TYPES[random.nextInt(TYPES.length)];
+            Coupon coupon = new Coupon()
+                    .setId(i + 1L)
+                    .setCreater(i + 1L)
+                    .setDiscountType(type)
+                    .setThresholdAmount(random.nextInt(4) * 5000)
+                    .setMaxDiscountAmount(1000 + random.nextInt(5000));
+            if (type == DiscountType.RATE_DISCOUNT) {
+                coupon.setDiscountValue(50 + random.nextInt(50));
+            } else {
+                coupon.setDiscountValue(100 + random.nextInt(3000));
+            }
+            if (type == DiscountType.PER_PRICE_DISCOUNT && coupon.getThresholdAmount() == 0) {
+                coupon.setThresholdAmount(5000);
+            }
+            List<OrderCourseDTO> available = new ArrayList<>();
+            for (OrderCourseDTO c : courses) {
+                if (random.nextInt(3) > 0) {
+                    available.add(c);
+                }
+            }
+            int total = available.stream().mapToInt(OrderCourseDTO::getPrice).sum();
+            if (!available.isEmpty() && DiscountStrategy.getDiscount(type).canUse(total, coupon)) {
+                couponMap.put(coupon, available);
+            }
+        }
+        return couponMap;
+    }
+
+    private static Map<Long, Integer> bestDiscountPerCouponSet(Map<Coupon, List<OrderCourseDTO>> couponMap,
+            List<OrderCourseDTO> courses, List<Coupon> coupons, List<List<Coupon>> solutions) {
+        Map<Long, Integer> best = new HashMap<>();
+        for (List<Coupon> solution : solutions) {
+            int[] result = simulate(couponMap, courses, coupons, solution);
+            best.merge((long) result[0], result[1], Math::max);
+        }
+        return best;
+    }
+
+    /**
+     * 与下单时计算方案优惠的方式一致：按顺序叠加，不可用的券跳过，优惠按课程原价比例分摊
+     *
+     * @return 实际使用的券的位图，总优惠金额
+     */
+    private static int[] simulate(Map<Coupon, List<OrderCourseDTO>> couponMap, List<OrderCourseDTO> courses,
+                                  List<Coupon> coupons, List<Coupon> solution) {
+        Map<Coupon, Integer> indexes = new IdentityHashMap<>();
+        for (int i = 0; i < coupons.size(); i++) {
+            indexes.put(coupons.get(i), i);
+        }
+        Map<Long, Integer> detail = new HashMap<>();
+        courses.forEach(c -> detail.put(c.getId(), 0));
+        int used = 0;
+        int discountTotal = 0;
+        for (Coupon coupon : solution) {
+            List<OrderCourseDTO> available = couponMap.get(coupon);
+            int totalAmount = available.stream().mapToInt(c -> c.getPrice() - detail.get(c.getId())).sum();
+            Discount discount = DiscountStrategy.getDiscount(coupon.getDiscountType());
+            if (totalAmount <= 0 || !discount.canUse(totalAmount, coupon)) {
+                continue;
+            }
+            int discountAmount = discount.calculateDiscount(totalAmount, coupon);
+            int remain = discountAmount;
+            for (int i = 0; i < available.size(); i++) {
+                OrderCourseDTO c = available.get(i);
+                int d = i == available.size() - 1 ? remain : discountAmount * c.getPrice() / totalAmount;
+                remain -= d;
+                detail.put(c.getId(), detail.get(c.getId()) + d);
+            }
+            used |= 1 << indexes.get(coupon);
+            discountTotal += discountAmount;
+        }
+        return new int[]{used, discountTotal};
+    }
+}
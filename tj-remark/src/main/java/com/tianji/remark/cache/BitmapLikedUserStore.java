@@ -0,0 +1,237 @@
+package com.tianji.remark.cache;
+
+import com.tianji.common.exceptions.DbException;
+import com.tianji.common.utils.CollUtils;
+import com.tianji.remark.config.LikedBizTypeConfig;
+import com.tianji.remark.constants.RedisConstants;
+import com.tianji.remark.domain.dto.LikeRecordFormDTO;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 点赞用户存储为按用户偏移量分片的容器，与Roaring Bitmap类似
+ * <p>
+ * 用户id是雪花算法生成的，不能直接作为位图偏移量，首次点赞时为用户分配连续的偏移量，所有业务共用。
+ * 偏移量按分片位数切分，每个分片是一个容器：点赞用户少时是数组容器，分片内偏移量编码为2字节拼接，
+ * 保存在业务的Hash中（a分片号）；超过数组容器上限后转换为独立的位图（Hash中记录b分片号），之后不再转回数组。
+ * 没有点赞用户的分片不占用空间。Hash中的count保存点赞数，count存在表示已从数据库加载。
+ * 用户的偏移量先查询或分配，再按偏移量确定分片，脚本访问的所有Key都通过KEYS声明。
+ * 元数据和分片位图的Key使用相同的hash tag：likes:bm:biz:{bizId}、likes:bm:biz:{bizId}:分片号，集群中在同一个slot
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "tj.remark", name = "like-store", havingValue = "bitmap")
+public class BitmapLikedUserStore implements LikedUserStore {
+
+    private static final int LOAD_BATCH_SIZE = 1000;
+    /**
+     * 分片内偏移量编码为2字节，分片位数不能超过该值
+     */
+    private static final int MAX_SHARD_BITS = 1 << 16;
+    /**
+     * 点赞脚本返回值中表示需要刷新有效期的位
+     */
+    private static final long TTL_REFRESH_FLAG = 2;
+    private static final RedisScript<Long> LIKE_SCRIPT;
+    private static final RedisScript<Long> LOAD_SCRIPT;
+    private static final RedisScript<List> CHECK_SCRIPT;
+    private static final RedisScript<List> OFFSET_SCRIPT;
+    private static final RedisScript<Long> EXPIRE_SCRIPT;
+
+    static {
+        LIKE_SCRIPT = RedisScript.of(new ClassPathResource("lua/like_bitmap.lua"), Long.class);
+        LOAD_SCRIPT = RedisScript.of(new ClassPathResource("lua/like_bitmap_load.lua"), Long.class);
+        CHECK_SCRIPT = RedisScript.of(new ClassPathResource("lua/like_bitmap_check.lua"), List.class);
+        OFFSET_SCRIPT = RedisScript.of(new ClassPathResource("lua/like_user_offset.lua"), List.class);
+        EXPIRE_SCRIPT = RedisScript.of(new ClassPathResource("lua/like_bitmap_expire.lua"), Long.class);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final LikedBizTypeConfig bizTypeConfig;
+    private final LikedTimesStore timesStore;
+    private final LikedJournalStore journalStore;
+
+    @Override
+    public long like(LikeRecordFormDTO recordDTO, Long userId, boolean deferLikedTimes) {
+        Long bizId = recordDTO.getBizId();
+        // 1.点赞时查询或分配用户的偏移量，取消点赞时用户没有偏移量说明从未点赞过
+        Long offset = recordDTO.getLiked() ? allocateOffsets(List.of(userId)).get(0) : offsetOf(userId);
+        if (offset == null) {
+            return 0;
+        }
+        int bits = shardBits();
+        long shard = offset / bits;
+        // 2.修改偏移量所在分片的容器
+        long now = System.currentTimeMillis();
+        Long result = redisTemplate.execute(LIKE_SCRIPT,
+                List.of(metaKeyOf(bizId),
+                        shardKeyOf(bizId, shard),
+                        timesStore.keyOf(recordDTO.getBizType(), bizId),
+                        journalStore.keyOf(bizId, userId),
+                        LikedBizIndex.keyOf(recordDTO.getBizType(), userId)),
+                recordDTO.getLiked() ? "1" : "0", bizId.toString(), ttlSeconds(),
+                LikedUserStore.journalEntry(recordDTO, userId, now),
+                String.valueOf(shard), String.valueOf(offset % bits), String.valueOf(now),
+                deferLikedTimes ? "1" : "0", String.valueOf(bizTypeConfig.getLikeBitmapArrayMaxSize()));
+        if (result == null || result < 0) {
+            return result == null ? 0 : result;
+        }
+        // 3.剩余有效期不足一半，刷新元数据和所有位图分片的有效期
+        if ((result & TTL_REFRESH_FLAG) != 0) {
+            refreshTtl(bizId);
+        }
+        return result & 1;
+    }
+
+    /**
+     * 分批写入位图，最后一批写入点赞数，标记加载完成
+     */
+    @Override
+    public void load(Long bizId, List<Long> userIds) {
+        int bits = shardBits();
+        List<List<Long>> batches = CollUtils.isEmpty(userIds)
+                ? List.of(List.of()) : CollUtils.split(userIds, LOAD_BATCH_SIZE);
+        for (int i = 0; i < batches.size(); i++) {
+            List<Long> batch = batches.get(i);
+            // 1.分配偏移量，按分片分组
+            Map<Long, StringJoiner> shardLows = new TreeMap<>();
+            if (CollUtils.isNotEmpty(batch)) {
+                for (Long offset : allocateOffsets(batch)) {
+                    shardLows.computeIfAbsent(offset / bits, k -> new StringJoiner(","))
+                            .add(String.valueOf(offset % bits));
+                }
+            }
+            // 2.声明本批涉及的所有分片位图
+            List<String> keys = new ArrayList<>(shardLows.size() + 1);
+            keys.add(metaKeyOf(bizId));
+            List<String> args = new ArrayList<>(shardLows.size() * 2 + 3);
+            args.add(ttlSeconds());
+            args.add(i == batches.size() - 1 ? String.valueOf(userIds.size()) : "-1");
+            args.add(String.valueOf(bizTypeConfig.getLikeBitmapArrayMaxSize()));
+            shardLows.forEach((shard, lows) -> {
+                keys.add(shardKeyOf(bizId, shard));
+                args.add(shard.toString());
+                args.add(lows.toString());
+            });
+            Long result = redisTemplate.execute(LOAD_SCRIPT, keys, args.toArray());
+            if (result == null || result == 0) {
+                // 其它线程已经加载完成
+                return;
+            }
+        }
+    }
+
+    @Override
+    public List<Long> countLikes(List<Long> bizIds) {
+        List<Object> objects = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection src = (StringRedisConnection) connection;
+            for (Long bizId : bizIds) {
+                src.hGet(metaKeyOf(bizId), "count");
+            }
+            return null;
+        });
+        List<Long> counts = new ArrayList<>(bizIds.size());
+        for (Object count : objects) {
+            counts.add(count == null ? null : Long.valueOf(count.toString()));
+        }
+        return counts;
+    }
+
+    /**
+     * 数组容器需要在Redis中查找，查询用户的偏移量后一次Lua调用完成
+     */
+    @Override
+    public List<Boolean> isLiked(Long userId, List<Long> bizIds) {
+        Long offset = offsetOf(userId);
+        List<String> keys = new ArrayList<>(bizIds.size() * 2);
+        for (Long bizId : bizIds) {
+            keys.add(metaKeyOf(bizId));
+        }
+        List<?> objects;
+        if (offset == null) {
+            // 从未点赞过，只需要判断是否已加载
+            objects = redisTemplate.execute(CHECK_SCRIPT, keys, "", "");
+        } else {
+            int bits = shardBits();
+            long shard = offset / bits;
+            for (Long bizId : bizIds) {
+                keys.add(shardKeyOf(bizId, shard));
+            }
+            objects = redisTemplate.execute(CHECK_SCRIPT, keys, String.valueOf(shard), String.valueOf(offset % bits));
+        }
+        List<Boolean> result = new ArrayList<>(bizIds.size());
+        for (int i = 0; i < bizIds.size(); i++) {
+            long status = objects == null ? -1 : ((Number) objects.get(i)).longValue();
+            result.add(status < 0 ? null : status == 1);
+        }
+        return result;
+    }
+
+    private Long offsetOf(Long userId) {
+        Object offset = redisTemplate.opsForHash().get(RedisConstants.LIKE_USER_OFFSET_KEY, userId.toString());
+        return offset == null ? null : Long.valueOf(offset.toString());
+    }
+
+    /**
+     * 查询用户的偏移量，不存在则分配
+     * @return 与用户id一一对应的偏移量
+     */
+    private List<Long> allocateOffsets(List<Long> userIds) {
+        List<?> objects = redisTemplate.execute(OFFSET_SCRIPT,
+                List.of(RedisConstants.LIKE_USER_OFFSET_KEY, RedisConstants.LIKE_USER_SEQ_KEY),
+                userIds.stream().map(String::valueOf).toArray());
+        if (objects == null || objects.size() != userIds.size()) {
+            throw new DbException("分配点赞用户偏移量失败");
+        }
+        List<Long> offsets = new ArrayList<>(objects.size());
+        for (Object o : objects) {
+            offsets.add(((Number) o).longValue());
+        }
+        return offsets;
+    }
+
+    /**
+     * 读取元数据中所有位图分片，声明后一起刷新有效期
+     */
+    private void refreshTtl(Long bizId) {
+        String metaKey = metaKeyOf(bizId);
+        List<String> keys = new ArrayList<>();
+        keys.add(metaKey);
+        for (Object field : redisTemplate.opsForHash().keys(metaKey)) {
+            String f = field.toString();
+            if (f.startsWith("b")) {
+                keys.add(shardKeyOf(bizId, Long.valueOf(f.substring(1))));
+            }
+        }
+        redisTemplate.execute(EXPIRE_SCRIPT, keys, ttlSeconds());
+    }
+
+    private String metaKeyOf(Long bizId) {
+        return RedisConstants.LIKE_BITMAP_KEY_PREFIX + "{" + bizId + "}";
+    }
+
+    private String shardKeyOf(Long bizId, long shard) {
+        return metaKeyOf(bizId) + ":" + shard;
+    }
+
+    private int shardBits() {
+        return Math.min(bizTypeConfig.getLikeBitmapShardBits(), MAX_SHARD_BITS);
+    }
+    private String ttlSeconds() {
+        return String.valueOf(TimeUnit.DAYS.toSeconds(bizTypeConfig.getLikeSetTtlDays()));
+    }
+}
@@ -0,0 +1,151 @@
+package com.tianji.remark.cache;
+
+import com.tianji.common.utils.CollUtils;
+import com.tianji.remark.config.LikedBizTypeConfig;
+import com.tianji.remark.constants.RedisConstants;
+import com.tianji.remark.domain.po.LikedRecord;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户点赞过的业务索引
+ * <p>
+ * 每个用户每种业务一个ZSet，member是业务id，score是点赞时间，由点赞脚本与业务的点赞用户同时维护。
+ * 包含一个score为0的占位成员，表示索引已从数据库加载，没有点赞过任何业务时索引也存在。
+ * 加载前点赞脚本也会写入索引，取消点赞写入score为负数的墓碑，加载时与数据库记录合并，
+ * 这样数据库还没有持久化的点赞日志不会丢失
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+public class LikedBizIndex {
+
+    private static final String PLACEHOLDER_MEMBER = "0";
+    private static final int LOAD_BATCH_SIZE = 1000;
+    private static final RedisScript<Long> LOAD_SCRIPT;
+    private static final RedisScript<Long> REPAIR_SCRIPT;
+
+    static {
+        LOAD_SCRIPT = RedisScript.of(new ClassPathResource("lua/liked_index_load.lua"), Long.class);
+        REPAIR_SCRIPT = RedisScript.of(new ClassPathResource("lua/liked_index_repair.lua"), Long.class);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final LikedBizTypeConfig bizTypeConfig;
+
+    public static String keyOf(String bizType, Long userId) {
+        return RedisConstants.LIKE_USER_INDEX_KEY_PREFIX + bizType + ":" + userId;
+    }
+
+    /**
+     * 查询用户对业务的点赞状态，一次ZMSCORE完成
+     * @return 与bizIds一一对应，索引还未从数据库加载返回null
+     */
+    public List<Boolean> isLiked(String bizType, Long userId, List<Long> bizIds) {
+        String key = keyOf(bizType, userId);
+        String[] members = bizIds.stream().map(String::valueOf).toArray(String[]::new);
+        List<Object> objects = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection src = (StringRedisConnection) connection;
+            src.zScore(key, PLACEHOLDER_MEMBER);
+            src.zMScore(key, members);
+            return null;
+        });
+        if (objects.get(0) == null) {
+            return null;
+        }
+        List<?> scores = (List<?>) objects.get(1);
+        List<Boolean> result = new ArrayList<>(bizIds.size());
+        for (Object score : scores) {
+            result.add(score != null && ((Number) score).doubleValue() > 0);
+        }
+        return result;
+    }
+
+    /**
+     * 按点赞时间倒序分页查询用户点赞过的业务
+     * @return 索引还未从数据库加载返回null
+     */
+    @SuppressWarnings("unchecked")
+    public LikedBizPage page(String bizType, Long userId, int from, int size) {
+        String key = keyOf(bizType, userId);
+        List<Object> objects = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection src = (StringRedisConnection) connection;
+            src.zScore(key, PLACEHOLDER_MEMBER);
+            src.zCard(key);
+            src.zRevRange(key, from, from + size - 1);
+            return null;
+        });
+        Long card = (Long) objects.get(1);
+        if (objects.get(0) == null || card == null) {
+            return null;
+        }
+        // 加载后没有墓碑，占位成员的score最小，总是排在最后
+        List<Long> bizIds = new ArrayList<>(size);
+        for (String member : (Collection<String>) objects.get(2)) {
+            if (!PLACEHOLDER_MEMBER.equals(member)) {
+                bizIds.add(Long.valueOf(member));
+            }
+        }
+        return new LikedBizPage(card - 1, bizIds);
+    }
+
+    /**
+     * 分批加载用户的点赞记录，不覆盖点赞脚本已经写入的点赞和墓碑，最后一批删除墓碑并写入占位成员
+     */
+    public void load(String bizType, Long userId, List<LikedRecord> records) {
+        List<String> keys = List.of(keyOf(bizType, userId));
+        String ttl = String.valueOf(TimeUnit.DAYS.toSeconds(bizTypeConfig.getLikeSetTtlDays()));
+        List<List<LikedRecord>> batches = CollUtils.isEmpty(records)
+                ? List.of(List.of()) : CollUtils.split(records, LOAD_BATCH_SIZE);
+        for (int i = 0; i < batches.size(); i++) {
+            List<LikedRecord> batch = batches.get(i);
+            List<String> args = new ArrayList<>(batch.size() * 2 + 2);
+            args.add(ttl);
+            args.add(i == batches.size() - 1 ? "1" : "0");
+            for (LikedRecord r : batch) {
+                long score = r.getCreateTime() == null ? 1L
+                        : r.getCreateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                args.add(String.valueOf(score));
+                args.add(r.getBizId().toString());
+            }
+            Long result = redisTemplate.execute(LOAD_SCRIPT, keys, args.toArray());
+            if (result == null || result == 0) {
+                // 其它线程已经加载完成
+                return;
+            }
+        }
+    }
+
+    /**
+     * 补充业务点赞用户中有、索引中没有的点赞，score是当前时间，索引已过期则不补充
+     */
+    public void repair(String bizType, Long userId, List<Long> bizIds) {
+        List<String> args = new ArrayList<>(bizIds.size() + 1);
+        args.add(String.valueOf(System.currentTimeMillis()));
+        for (Long bizId : bizIds) {
+            args.add(bizId.toString());
+        }
+        redisTemplate.execute(REPAIR_SCRIPT, List.of(keyOf(bizType, userId)), args.toArray());
+    }
+
+    /**
+     * 用户点赞过的业务分页数据，total不包含占位成员
+     */
+    @Value
+    public static class LikedBizPage {
+        long total;
+        List<Long> bizIds;
+    }
+}
@@ -0,0 +1,66 @@
+package com.tianji.remark.cache;
+
+import com.tianji.remark.config.LikedBizTypeConfig;
+import com.tianji.remark.constants.RedisConstants;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 待持久化的点赞日志
+ * <p>
+ * 按业务id和用户id分片为多个List，同一用户对同一业务的操作在同一分片内保持顺序，热点业务的日志也分散到各分片，
+ * 分片0沿用原来的Key。
+ * 每批日志先移动到分片的处理中列表，写库成功后才删除，宕机或写库失败时下次重新处理
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+public class LikedJournalStore {
+
+    private static final String PROCESSING_SUFFIX = ":processing";
+    private static final RedisScript<List> TAKE_SCRIPT;
+
+    static {
+        TAKE_SCRIPT = RedisScript.of(new ClassPathResource("lua/list_batch_move.lua"), List.class);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final LikedBizTypeConfig bizTypeConfig;
+
+    /**
+     * 用户对业务的操作所在分片的Key
+     */
+    public String keyOf(Long bizId, Long userId) {
+        return shardKeyOf(Math.floorMod(Objects.hash(bizId, userId), shards()));
+    }
+
+    public int shards() {
+        return Math.max(1, bizTypeConfig.getLikeJournalShards());
+    }
+
+    /**
+     * 取出分片中的一批日志，上次取出的还未确认时继续返回上次的日志
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> take(int shard, int maxSize) {
+        String key = shardKeyOf(shard);
+        return redisTemplate.execute(TAKE_SCRIPT, List.of(key, key + PROCESSING_SUFFIX), String.valueOf(maxSize));
+    }
+
+    /**
+     * 确认分片中取出的日志已经写库
+     */
+    public void ack(int shard) {
+        redisTemplate.delete(shardKeyOf(shard) + PROCESSING_SUFFIX);
+    }
+
+    private String shardKeyOf(int shard) {
+        return shard == 0 ? RedisConstants.LIKE_JOURNAL_KEY : RedisConstants.LIKE_JOURNAL_KEY + ":" + shard;
+    }
+}
@@ -0,0 +1,98 @@
+package com.tianji.remark.cache;
+
+import com.tianji.common.utils.CollUtils;
+import com.tianji.remark.config.LikedBizTypeConfig;
+import com.tianji.remark.constants.RedisConstants;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 待同步的业务点赞数
+ * <p>
+ * 每种业务按业务id分片为多个ZSet，member是业务id，score是最新的点赞总数，分片0沿用原来的Key
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+public class LikedTimesStore {
+
+    private final StringRedisTemplate redisTemplate;
+    private final LikedBizTypeConfig bizTypeConfig;
+    /**
+     * 读取的起始分片，轮流从不同分片开始，避免后面的分片一直得不到同步
+     */
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    /**
+     * 业务所在分片的Key
+     */
+    public String keyOf(String bizType, Long bizId) {
+        return shardKeyOf(bizType, Math.floorMod(bizId, shards()));
+    }
+
+    /**
+     * 各分片的积压数量之和
+     */
+    public long backlog(String bizType) {
+        int shards = shards();
+        List<Object> sizes = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection src = (StringRedisConnection) connection;
+            for (int i = 0; i < shards; i++) {
+                src.zCard(shardKeyOf(bizType, i));
+            }
+            return null;
+        });
+        return sizes.stream().mapToLong(o -> o == null ? 0 : (Long) o).sum();
+    }
+
+    /**
+     * 从各分片读取并移除点赞数最少的业务，合并后最多返回maxSize条
+     */
+    public List<ZSetOperations.TypedTuple<String>> popMin(String bizType, int maxSize) {
+        int shards = shards();
+        int start = Math.floorMod(nextShard.getAndIncrement(), shards);
+        List<ZSetOperations.TypedTuple<String>> tuples = new ArrayList<>();
+        for (int i = 0; i < shards && tuples.size() < maxSize; i++) {
+            Set<ZSetOperations.TypedTuple<String>> popped = redisTemplate.opsForZSet()
+                    .popMin(shardKeyOf(bizType, (start + i) % shards), maxSize - tuples.size());
+            if (CollUtils.isNotEmpty(popped)) {
+                tuples.addAll(popped);
+            }
+        }
+        return tuples;
+    }
+
+    /**
+     * 批量写入业务的点赞总数
+     * @param likedTimes key是业务id，value是点赞总数
+     */
+    public void putAll(String bizType, Map<Long, Long> likedTimes) {
+        if (CollUtils.isEmpty(likedTimes)) {
+            return;
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection src = (StringRedisConnection) connection;
+            likedTimes.forEach((bizId, times) -> src.zAdd(keyOf(bizType, bizId), times, bizId.toString()));
+            return null;
+        });
+    }
+
+    private String shardKeyOf(String bizType, int shard) {
+        String key = RedisConstants.LIKES_TIMES_KEY_PREFIX + bizType;
+        return shard == 0 ? key : key + ":" + shard;
+    }
+
+    private int shards() {
+        return Math.max(1, bizTypeConfig.getLikedTimesShards());
+    }
+}
@@ -0,0 +1,47 @@
+package com.tianji.remark.cache;
+
+import com.tianji.remark.domain.dto.LikeRecordFormDTO;
+
+import java.util.List;
+
+/**
+ * 点赞用户的Redis存储
+ * <p>
+ * 记录每个业务的点赞用户，点赞或取消点赞时同时更新待同步的点赞数，并追加待持久化的日志。
+ * 业务的点赞用户长时间没有变化会从Redis淘汰，由调用方从数据库加载
+ * </p>
+ */
+public interface LikedUserStore {
+
+    /**
+     * 点赞或取消点赞，同时维护用户点赞过的业务索引{@link LikedBizIndex}
+     * @param deferLikedTimes 是否为热点业务，跳过写入待同步的点赞数，由调用方合并后写入，集合存储还会拆分点赞用户
+     * @return 1：点赞状态发生变化，0：没有变化，-1：业务的点赞用户不在缓存中，需要先加载
+     */
+    long like(LikeRecordFormDTO recordDTO, Long userId, boolean deferLikedTimes);
+
+    /**
+     * 批量查询业务的点赞总数
+     * @return 与bizIds一一对应，业务的点赞用户不在缓存中的为null
+     */
+    List<Long> countLikes(List<Long> bizIds);
+
+    /**
+     * 加载业务的点赞用户，已经加载过的不会覆盖
+     */
+    void load(Long bizId, List<Long> userIds);
+
+    /**
+     * 批量查询用户对业务的点赞状态
+     * @return 与bizIds一一对应，业务的点赞用户不在缓存中的为null
+     */
+    List<Boolean> isLiked(Long userId, List<Long> bizIds);
+
+    /**
+     * 待持久化的日志，格式：bizType|bizId|userId|op|时间戳
+     */
+    static String journalEntry(LikeRecordFormDTO recordDTO, Long userId, long timestamp) {
+        return recordDTO.getBizType() + "|" + recordDTO.getBizId() + "|" + userId + "|"
+                + (recordDTO.getLiked() ? "1" : "0") + "|" + timestamp;
+    }
+}
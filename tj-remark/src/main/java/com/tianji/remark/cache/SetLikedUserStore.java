@@ -0,0 +1,228 @@
+package com.tianji.remark.cache;
+
+import com.tianji.common.utils.BooleanUtils;
+import com.tianji.common.utils.CollUtils;
+import com.tianji.remark.config.LikedBizTypeConfig;
+import com.tianji.remark.constants.RedisConstants;
+import com.tianji.remark.domain.dto.LikeRecordFormDTO;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 点赞用户存储为Redis集合，成员是用户id
+ * <p>
+ * 热点业务的点赞用户按用户id拆分：集合中写入拆分标记，之后的点赞写入用户所在的分片（集合KEY:分片号），
+ * 原集合只剩读取和取消点赞，点赞用户是原集合与各分片的并集，点赞数是各部分之和
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "tj.remark", name = "like-store", havingValue = "set", matchIfMissing = true)
+public class SetLikedUserStore implements LikedUserStore {
+
+    /**
+     * 点赞用户集合中的占位成员，表示集合已从数据库加载，没有人点赞时集合也存在
+     */
+    private static final String PLACEHOLDER_MEMBER = "0";
+    /**
+     * 点赞用户集合中的拆分标记，表示热点业务的点赞用户已按用户id拆分
+     */
+    private static final String SPLIT_MEMBER = "s";
+    /**
+     * 点赞脚本返回值中表示需要刷新有效期的位
+     */
+    private static final long TTL_REFRESH_FLAG = 2;
+    private static final int LOAD_BATCH_SIZE = 1000;
+    private static final RedisScript<Long> LIKE_SCRIPT;
+
+    static {
+        LIKE_SCRIPT = RedisScript.of(new ClassPathResource("lua/like_record.lua"), Long.class);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final LikedBizTypeConfig bizTypeConfig;
+    private final LikedTimesStore timesStore;
+    private final LikedJournalStore journalStore;
+
+    @Override
+    public long like(LikeRecordFormDTO recordDTO, Long userId, boolean deferLikedTimes) {
+        Long bizId = recordDTO.getBizId();
+        long now = System.currentTimeMillis();
+        Long result = redisTemplate.execute(LIKE_SCRIPT,
+                List.of(keyOf(bizId),
+                        timesStore.keyOf(recordDTO.getBizType(), bizId),
+                        journalStore.keyOf(bizId, userId),
+                        LikedBizIndex.keyOf(recordDTO.getBizType(), userId),
+                        shardKeyOf(bizId, userId)),
+                recordDTO.getLiked() ? "1" : "0", userId.toString(), bizId.toString(), ttlSeconds(),
+                LikedUserStore.journalEntry(recordDTO, userId, now), String.valueOf(now),
+                deferLikedTimes ? "1" : "0");
+        if (result == null || result < 0) {
+            return result == null ? 0 : result;
+        }
+        // 已拆分的业务剩余有效期不足一半，刷新原集合和所有分片的有效期
+        if ((result & TTL_REFRESH_FLAG) != 0) {
+            refreshTtl(bizId);
+        }
+        return result & 1;
+    }
+
+    /**
+     * 先写入临时Key，再原子地改名，并发加载时只保留一份
+     */
+    @Override
+    public void load(Long bizId, List<Long> userIds) {
+        List<String> members = new ArrayList<>(userIds.size() + 1);
+        members.add(PLACEHOLDER_MEMBER);
+        for (Long userId : userIds) {
+            members.add(userId.toString());
+        }
+        String key = keyOf(bizId);
+        String tmpKey = key + ":loading:" + UUID.randomUUID();
+        for (List<String> batch : CollUtils.split(members, LOAD_BATCH_SIZE)) {
+            redisTemplate.opsForSet().add(tmpKey, batch.toArray(new String[0]));
+        }
+        redisTemplate.expire(tmpKey, Duration.ofDays(bizTypeConfig.getLikeSetTtlDays()));
+        if (!BooleanUtils.isTrue(redisTemplate.renameIfAbsent(tmpKey, key))) {
+            redisTemplate.delete(tmpKey);
+        }
+    }
+
+    @Override
+    public List<Long> countLikes(List<Long> bizIds) {
+        // 1.统计原集合，同时判断是否已拆分
+        List<Object> objects = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection src = (StringRedisConnection) connection;
+            for (Long bizId : bizIds) {
+                String key = keyOf(bizId);
+                src.sCard(key);
+                src.sIsMember(key, PLACEHOLDER_MEMBER);
+                src.sIsMember(key, SPLIT_MEMBER);
+            }
+            return null;
+        });
+        List<Long> counts = new ArrayList<>(bizIds.size());
+        List<Long> splitBizIds = new ArrayList<>();
+        for (int i = 0; i < bizIds.size(); i++) {
+            Long card = (Long) objects.get(3 * i);
+            if (card == null || card == 0) {
+                counts.add(null);
+                continue;
+            }
+            // 点赞数不包含占位成员和拆分标记
+            boolean split = BooleanUtils.isTrue((Boolean) objects.get(3 * i + 2));
+            if (BooleanUtils.isTrue((Boolean) objects.get(3 * i + 1))) {
+                card--;
+            }
+            if (split) {
+                card--;
+                splitBizIds.add(bizIds.get(i));
+            }
+            counts.add(card);
+        }
+        if (splitBizIds.isEmpty()) {
+            return counts;
+        }
+        // 2.已拆分的业务累加各分片的点赞数
+        int shards = shards();
+        List<Object> shardCards = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection src = (StringRedisConnection) connection;
+            for (Long bizId : splitBizIds) {
+                for (int shard = 0; shard < shards; shard++) {
+                    src.sCard(keyOf(bizId) + ":" + shard);
+                }
+            }
+            return null;
+        });
+        Map<Long, Long> splitCounts = new HashMap<>(splitBizIds.size());
+        for (int i = 0; i < splitBizIds.size(); i++) {
+            long sum = 0;
+            for (int shard = 0; shard < shards; shard++) {
+                Object card = shardCards.get(i * shards + shard);
+                sum += card == null ? 0 : (Long) card;
+            }
+            splitCounts.put(splitBizIds.get(i), sum);
+        }
+        for (int i = 0; i < bizIds.size(); i++) {
+            Long sum = splitCounts.get(bizIds.get(i));
+            if (sum != null) {
+                counts.set(i, counts.get(i) + sum);
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public List<Boolean> isLiked(Long userId, List<Long> bizIds) {
+        // 查询原集合和用户所在分片中的点赞状态，同时判断点赞用户集合是否在缓存中，没有拆分时分片不存在
+        List<Object> objects = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection src = (StringRedisConnection) connection;
+            for (Long bizId : bizIds) {
+                String key = keyOf(bizId);
+                src.sIsMember(key, userId.toString());
+                src.exists(key);
+                src.sIsMember(shardKeyOf(bizId, userId), userId.toString());
+            }
+            return null;
+        });
+        List<Boolean> result = new ArrayList<>(bizIds.size());
+        for (int i = 0; i < bizIds.size(); i++) {
+            if (BooleanUtils.isTrue((Boolean) objects.get(3 * i))
+                    || BooleanUtils.isTrue((Boolean) objects.get(3 * i + 2))) {
+                result.add(true);
+            } else {
+                result.add(BooleanUtils.isTrue((Boolean) objects.get(3 * i + 1)) ? false : null);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 先刷新所有分片，最后刷新原集合，中途失败时下次点赞仍会触发刷新
+     */
+    private void refreshTtl(Long bizId) {
+        long ttl = TimeUnit.DAYS.toSeconds(bizTypeConfig.getLikeSetTtlDays());
+        int shards = shards();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection src = (StringRedisConnection) connection;
+            for (int shard = 0; shard < shards; shard++) {
+                src.expire(keyOf(bizId) + ":" + shard, ttl);
+            }
+            src.expire(keyOf(bizId), ttl);
+            return null;
+        });
+    }
+
+    private String keyOf(Long bizId) {
+        return RedisConstants.LIKE_BIZ_KEY_PREFIX + bizId;
+    }
+
+    /**
+     * 拆分后用户所在分片的Key
+     */
+    private String shardKeyOf(Long bizId, Long userId) {
+        return keyOf(bizId) + ":" + Math.floorMod(userId, shards());
+    }
+
+    private int shards() {
+        return Math.max(1, bizTypeConfig.getLikeSetHotShards());
+    }
+
+    private String ttlSeconds() {
+        return String.valueOf(TimeUnit.DAYS.toSeconds(bizTypeConfig.getLikeSetTtlDays()));
+    }
+}
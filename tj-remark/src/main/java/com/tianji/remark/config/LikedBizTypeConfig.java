@@ -11,5 +11,59 @@ import java.util.List;
 @ConfigurationProperties(prefix = "tj.remark")
 public class LikedBizTypeConfig {
     private List<String> bizTypes;
+    /**
+     * 点赞用户集合的缓存天数，期间没有点赞或取消点赞则从Redis淘汰，查询时回源数据库。
+     * 只对从数据库加载的集合生效，之前只保存在Redis中的集合不淘汰
+     */
+    private int likeSetTtlDays = 7;
+    /**
+     * 待持久化点赞日志的分片数量，按业务id和用户id分片，分片0沿用原来的Key，修改分片前需要先持久化完
+     */
+    private int likeJournalShards = 8;
+    /**
+     * 点赞用户的存储方式：set为Redis集合，bitmap为按用户偏移量分片的数组或位图容器
+     */
+    private String likeStore = "set";
+    /**
+     * 集合存储时热点业务的点赞用户按用户id拆分的分片数量，已拆分的业务不会迁移，只能在没有已拆分的业务时修改
+     */
+    private int likeSetHotShards = 8;
+    /**
+     * 位图存储时每个分片的位数，分片内偏移量编码为2字节，最大65536
+     */
+    private int likeBitmapShardBits = 65536;
+    /**
+     * 位图存储时数组容器的最大用户数，超过后分片转换为位图。
+     * 默认值下数组容器最大8KB，与65536位的位图相同
+     */
+    private int likeBitmapArrayMaxSize = 4096;
+    /**
+     * 同步点赞数时每批读取的最小业务数量
+     */
+    private int likedTimesMinBatchSize = 30;
+    /**
+     * 同步点赞数时每批读取的最大业务数量，积压超过该数量时循环读取直到清空
+     */
+    private int likedTimesMaxBatchSize = 500;
+    /**
+     * 有积压时的检查间隔，单位毫秒，不小于任务的调度间隔
+     */
+    private long likedTimesMinIntervalMillis = 1000;
+    /**
+     * 空闲时的最大检查间隔，单位毫秒，连续空闲时检查间隔逐步翻倍直到该值
+     */
+    private long likedTimesMaxIntervalMillis = 20000;
+    /**
+     * 待同步点赞数ZSet的分片数量，按业务id分片，分片0沿用原来的Key，减少分片前需要先同步完
+     */
+    private int likedTimesShards = 1;
+    /**
+     * 单个实例1秒内点赞次数达到该值的业务视为热点，点赞数在本地合并后写入
+     */
+    private int hotLikeThreshold = 50;
+    /**
+     * 热点业务的保持时间，单位秒，期间没有再达到阈值则恢复为逐次写入
+     */
+    private int hotLikeHoldSeconds = 10;
 
 }
\ No newline at end of file
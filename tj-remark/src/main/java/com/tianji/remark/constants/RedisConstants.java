@@ -1,8 +1,22 @@
 package com.tianji.remark.constants;
 
 public interface RedisConstants {
-    /*给业务点赞的用户集合的KEY前缀，后缀是业务id*/
+    /*给业务点赞的用户集合的KEY前缀，后缀是业务id，热点业务拆分后的分片再拼接:分片号*/
     String LIKE_BIZ_KEY_PREFIX = "likes:set:biz:";
     /*业务点赞数统计的KEY前缀，后缀是业务类型*/
     String LIKES_TIMES_KEY_PREFIX = "likes:times:type:";
-}
\ No newline at end of file
+    /*同步业务点赞数的租约KEY前缀，后缀是业务类型，保证每种业务只有一个实例同步*/
+    String LIKES_TIMES_LEASE_KEY_PREFIX = "likes:times:lease:";
+    /*待持久化的点赞、取消点赞日志，List结构，按业务id和用户id分片，分片0使用该KEY，其它分片再拼接:分片号*/
+    String LIKE_JOURNAL_KEY = "likes:journal";
+    /*点赞日志持久化任务的锁前缀，后缀是分片号，保证每个分片的日志按顺序写入数据库*/
+    String LIKE_JOURNAL_LOCK_KEY_PREFIX = "likes:journal:lock:";
+    /*用户点赞过的业务索引KEY前缀，后缀是业务类型:用户id，ZSet结构，score是点赞时间*/
+    String LIKE_USER_INDEX_KEY_PREFIX = "likes:user:";
+    /*位图存储的点赞用户KEY前缀，后缀是{业务id}，Hash结构保存点赞数和已有的分片，分片位图的KEY再拼接:分片号，hash tag相同*/
+    String LIKE_BITMAP_KEY_PREFIX = "likes:bm:biz:";
+    /*用户id到位图偏移量的映射*/
+    String LIKE_USER_OFFSET_KEY = "likes:uid:offset";
+    /*已分配的位图偏移量序号*/
+    String LIKE_USER_SEQ_KEY = "likes:uid:seq";
+}
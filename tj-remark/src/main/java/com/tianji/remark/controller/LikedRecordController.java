@@ -1,13 +1,18 @@
 package com.tianji.remark.controller;
 
+import com.tianji.common.domain.dto.PageDTO;
+import com.tianji.common.domain.query.PageQuery;
+import com.tianji.common.utils.StringUtils;
 import com.tianji.remark.domain.dto.LikeRecordFormDTO;
 import com.tianji.remark.service.ILikedRecordService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -34,7 +39,27 @@ public class LikedRecordController {
 
     @GetMapping("list")
     @ApiOperation("查询指定业务id的点赞状态")
-    public Set<Long> isBizLiked(@RequestParam("bizIds") List<Long> bizIds) {
+    public Set<Long> isBizLiked(
+            @ApiParam("业务类型，指定时通过用户点赞过的业务索引查询") @RequestParam(value = "bizType", required = false) String bizType,
+            @RequestParam("bizIds") List<Long> bizIds) {
+        if (StringUtils.isNotBlank(bizType)) {
+            return likedRecordService.isBizLiked(bizType, bizIds);
+        }
         return likedRecordService.isBizLiked(bizIds);
     }
+
+    @GetMapping("times")
+    @ApiOperation("批量查询业务的实时点赞数")
+    public Map<Long, Integer> queryLikedTimes(
+            @ApiParam("业务类型") @RequestParam("bizType") String bizType,
+            @RequestParam("bizIds") List<Long> bizIds) {
+        return likedRecordService.queryLikedTimes(bizType, bizIds);
+    }
+
+    @GetMapping("mine")
+    @ApiOperation("分页查询当前用户点赞过的业务id，按点赞时间倒序")
+    public PageDTO<Long> queryMyLikedBiz(
+            @ApiParam("业务类型") @RequestParam("bizType") String bizType, PageQuery query) {
+        return likedRecordService.queryMyLikedBiz(bizType, query);
+    }
 }
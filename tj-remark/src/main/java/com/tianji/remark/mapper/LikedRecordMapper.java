@@ -1,7 +1,11 @@
 package com.tianji.remark.mapper;
 
+import com.tianji.api.dto.remark.LikedTimesDTO;
 import com.tianji.remark.domain.po.LikedRecord;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +17,18 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface LikedRecordMapper extends BaseMapper<LikedRecord> {
 
+    /**
+     * 批量新增点赞记录，同一业务同一用户已存在的忽略，传入的记录中业务和用户不能重复
+     */
+    int insertBatchIfAbsent(@Param("records") List<LikedRecord> records);
+
+    /**
+     * 按业务id和用户id批量删除点赞记录
+     */
+    int deleteBatchByBizAndUser(@Param("records") List<LikedRecord> records);
+
+    /**
+     * 批量统计业务的点赞数，没有点赞记录的业务不返回
+     */
+    List<LikedTimesDTO> countLikedTimes(@Param("bizType") String bizType, @Param("bizIds") List<Long> bizIds);
 }
@@ -1,10 +1,13 @@
 package com.tianji.remark.service;
 
+import com.tianji.common.domain.dto.PageDTO;
+import com.tianji.common.domain.query.PageQuery;
 import com.tianji.remark.domain.dto.LikeRecordFormDTO;
 import com.tianji.remark.domain.po.LikedRecord;
 import com.baomidou.mybatisplus.extension.service.IService;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -30,5 +33,43 @@ public interface ILikedRecordService extends IService<LikedRecord> {
      */
     Set<Long> isBizLiked(List<Long> bizIds);
 
-    void readLikedTimesAndSendMessage(String bizType, int maxBizSize);
+    /**
+     * 查询指定类型业务的点赞状态，通过用户点赞过的业务索引一次查询完成
+     * @param bizType 业务类型
+     * @param bizIds 业务id
+     * @return 点赞过的业务id
+     */
+    Set<Long> isBizLiked(String bizType, List<Long> bizIds);
+
+    /**
+     * 分页查询当前用户点赞过的业务，按点赞时间倒序
+     * @param bizType 业务类型
+     * @param query 分页参数
+     * @return 业务id
+     */
+    PageDTO<Long> queryMyLikedBiz(String bizType, PageQuery query);
+
+    /**
+     * 批量查询业务的实时点赞数
+     * @param bizType 业务类型
+     * @param bizIds 业务id
+     * @return key是业务id，value是点赞数
+     */
+    Map<Long, Integer> queryLikedTimes(String bizType, List<Long> bizIds);
+
+    /**
+     * 读取并移除Redis中待同步的点赞数，发送到MQ
+     * @param bizType 业务类型
+     * @param maxBizSize 最多读取的业务数量
+     * @return 实际读取的业务数量
+     */
+    int readLikedTimesAndSendMessage(String bizType, int maxBizSize);
+
+    /**
+     * 批量持久化一个分片的点赞日志到数据库
+     * @param shard 日志分片
+     * @param maxSize 每批最多处理的日志条数
+     * @return 本次处理的日志条数
+     */
+    int persistLikeJournal(int shard, int maxSize);
 }
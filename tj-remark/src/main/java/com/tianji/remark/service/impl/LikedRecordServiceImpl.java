@@ -1,8 +1,11 @@
 package com.tianji.remark.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.tianji.api.dto.remark.LikedTimesDTO;
 import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
+import com.tianji.common.domain.dto.PageDTO;
+import com.tianji.common.domain.query.PageQuery;
 import com.tianji.common.utils.StringUtils;
 import com.tianji.common.utils.UserContext;
 import com.tianji.remark.domain.dto.LikeRecordFormDTO;
@@ -13,7 +16,9 @@ import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -63,8 +68,37 @@ public class LikedRecordServiceImpl extends ServiceImpl<LikedRecordMapper, Liked
     }
 
     @Override
-    public void readLikedTimesAndSendMessage(String bizType, int maxBizSize) {
+    public int readLikedTimesAndSendMessage(String bizType, int maxBizSize) {
+        return 0;
+    }
+
+    @Override
+    public Set<Long> isBizLiked(String bizType, List<Long> bizIds) {
+        return isBizLiked(bizIds);
+    }
+
+    @Override
+    public PageDTO<Long> queryMyLikedBiz(String bizType, PageQuery query) {
+        Page<LikedRecord> page = lambdaQuery()
+                .eq(LikedRecord::getUserId, UserContext.getUser())
+                .eq(LikedRecord::getBizType, bizType)
+                .page(query.toMpPageDefaultSortByCreateTimeDesc());
+        return PageDTO.of(page, LikedRecord::getBizId);
+    }
+
+    @Override
+    public Map<Long, Integer> queryLikedTimes(String bizType, List<Long> bizIds) {
+        Map<Long, Integer> likedTimes = new HashMap<>(bizIds.size());
+        bizIds.forEach(bizId -> likedTimes.put(bizId, 0));
+        getBaseMapper().countLikedTimes(bizType, bizIds)
+                .forEach(dto -> likedTimes.put(dto.getBizId(), dto.getLikedTimes()));
+        return likedTimes;
+    }
 
+    @Override
+    public int persistLikeJournal(int shard, int maxSize) {
+        // 点赞记录直接写库，没有需要持久化的日志
+        return 0;
     }
 
     private boolean unlike(LikeRecordFormDTO recordDTO) {
@@ -1,115 +1,275 @@
 package com.tianji.remark.service.impl;
 
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.tianji.api.dto.remark.LikedTimesDTO;
 import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
 import com.tianji.common.constants.MqConstants;
+import com.tianji.common.domain.dto.PageDTO;
+import com.tianji.common.domain.query.PageQuery;
 import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.StringUtils;
 import com.tianji.common.utils.UserContext;
-import com.tianji.remark.constants.RedisConstants;
+import com.tianji.remark.cache.LikedBizIndex;
+import com.tianji.remark.cache.LikedJournalStore;
+import com.tianji.remark.cache.LikedTimesStore;
+import com.tianji.remark.cache.LikedUserStore;
 import com.tianji.remark.domain.dto.LikeRecordFormDTO;
 import com.tianji.remark.domain.po.LikedRecord;
 import com.tianji.remark.mapper.LikedRecordMapper;
 import com.tianji.remark.service.ILikedRecordService;
+import com.tianji.remark.task.LikedTimesAggregateTask;
 import lombok.RequiredArgsConstructor;
-import org.springframework.boot.autoconfigure.cache.CacheProperties;
-import org.springframework.data.redis.connection.StringRedisConnection;
-import org.springframework.data.redis.core.RedisCallback;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class LikedRecordServiceRedisImpl extends ServiceImpl<LikedRecordMapper, LikedRecord> implements ILikedRecordService {
 
     private final RabbitMqHelper mqHelper;
-    private final StringRedisTemplate redisTemplate;
+    private final LikedUserStore likedUserStore;
+    private final LikedBizIndex likedBizIndex;
+    private final LikedTimesStore timesStore;
+    private final LikedJournalStore journalStore;
+    private final LikedTimesAggregateTask aggregateTask;
 
     @Override
     public void addLikeRecord(LikeRecordFormDTO recordDTO) {
-        // 判断点赞or取消点赞
-        boolean success = recordDTO.getLiked() ? like(recordDTO) : unlike(recordDTO);
-        if (!success) {
-            return;
-        }
-        // 从redis统计点赞总数
-        Long likedTimes = redisTemplate.opsForSet()
-                .size(RedisConstants.LIKE_BIZ_KEY_PREFIX + recordDTO.getBizId());
-        if (likedTimes == null) {
-            return;
-        }
-        // 缓存点赞数到redis
-        redisTemplate.opsForZSet().add(
-                RedisConstants.LIKES_TIMES_KEY_PREFIX + recordDTO.getBizType(),
-                recordDTO.getBizId().toString(),
-                likedTimes
-        );
+        Long userId = UserContext.getUser();
+        // 热点业务的点赞数在本地合并后写入，减少对同一个Key的写入
+        boolean hot = aggregateTask.isHot(recordDTO.getBizId());
+        // 点赞或取消点赞，同时更新点赞数、追加持久化日志，一次Lua调用完成
+        long result = likedUserStore.like(recordDTO, userId, hot);
+        if (result < 0) {
+            // 点赞用户已被淘汰，从数据库加载后重试
+            loadLikedUsers(recordDTO.getBizId());
+            result = likedUserStore.like(recordDTO, userId, hot);
+        }
+        if (hot && result > 0) {
+            aggregateTask.markChanged(recordDTO.getBizType(), recordDTO.getBizId());
+        }
+        log.debug("用户{}{}业务{}，结果：{}", userId, recordDTO.getLiked() ? "点赞" : "取消点赞", recordDTO.getBizId(), result);
+    }
+
+    private void loadLikedUsers(Long bizId) {
+        List<Long> userIds = lambdaQuery()
+                .select(LikedRecord::getUserId)
+                .eq(LikedRecord::getBizId, bizId)
+                .list()
+                .stream()
+                .map(LikedRecord::getUserId)
+                .collect(Collectors.toList());
+        likedUserStore.load(bizId, userIds);
     }
 
     @Override
     public Set<Long> isBizLiked(List<Long> bizIds) {
         Long userId = UserContext.getUser();
-        // 查询点赞状态
-        List<Object> objects = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
-            StringRedisConnection src = (StringRedisConnection) connection;
-            for (Long bizId : bizIds) {
-                String key = RedisConstants.LIKE_BIZ_KEY_PREFIX + bizId;
-                src.sIsMember(key, userId.toString());
+        List<Boolean> states = likedUserStore.isLiked(userId, bizIds);
+        Set<Long> liked = new HashSet<>();
+        List<Long> missing = new ArrayList<>();
+        for (int i = 0; i < bizIds.size(); i++) {
+            Boolean state = states.get(i);
+            if (state == null) {
+                missing.add(bizIds.get(i));
+            } else if (state) {
+                liked.add(bizIds.get(i));
+            }
+        }
+        // 已淘汰的冷数据回源数据库，不回填缓存
+        if (CollUtils.isNotEmpty(missing)) {
+            lambdaQuery()
+                    .select(LikedRecord::getBizId)
+                    .eq(LikedRecord::getUserId, userId)
+                    .in(LikedRecord::getBizId, missing)
+                    .list()
+                    .forEach(r -> liked.add(r.getBizId()));
+        }
+        return liked;
+    }
+
+    @Override
+    public Set<Long> isBizLiked(String bizType, List<Long> bizIds) {
+        if (CollUtils.isEmpty(bizIds)) {
+            return CollUtils.emptySet();
+        }
+        Long userId = UserContext.getUser();
+        // 1.查询用户点赞过的业务索引
+        List<Boolean> states = likedBizIndex.isLiked(bizType, userId, bizIds);
+        if (states == null) {
+            // 2.索引还未加载，从数据库加载后重新查询，索引中包含数据库还没有持久化的点赞
+            List<LikedRecord> records = loadLikedBizIndex(bizType, userId);
+            states = likedBizIndex.isLiked(bizType, userId, bizIds);
+            if (states == null) {
+                Set<Long> candidates = new HashSet<>(bizIds);
+                return records.stream()
+                        .map(LikedRecord::getBizId)
+                        .filter(candidates::contains)
+                        .collect(Collectors.toSet());
+            }
+        }
+        Set<Long> liked = new HashSet<>();
+        List<Long> unliked = new ArrayList<>();
+        for (int i = 0; i < bizIds.size(); i++) {
+            if (states.get(i)) {
+                liked.add(bizIds.get(i));
+            } else {
+                unliked.add(bizIds.get(i));
+            }
+        }
+        // 3.索引只从数据库加载，只在业务点赞用户中的历史点赞（没有持久化就已存在的缓存数据）不在索引中，
+        // 再次点赞时用户已在点赞用户中，脚本不会写入索引。以业务的点赞用户为准，补充到索引中
+        if (CollUtils.isNotEmpty(unliked)) {
+            List<Boolean> stored = likedUserStore.isLiked(userId, unliked);
+            List<Long> repaired = new ArrayList<>();
+            for (int i = 0; i < unliked.size(); i++) {
+                if (Boolean.TRUE.equals(stored.get(i))) {
+                    repaired.add(unliked.get(i));
+                }
+            }
+            if (CollUtils.isNotEmpty(repaired)) {
+                liked.addAll(repaired);
+                likedBizIndex.repair(bizType, userId, repaired);
+            }
+        }
+        return liked;
+    }
+
+    @Override
+    public PageDTO<Long> queryMyLikedBiz(String bizType, PageQuery query) {
+        Long userId = UserContext.getUser();
+        LikedBizIndex.LikedBizPage page = likedBizIndex.page(bizType, userId, query.from(), query.getPageSize());
+        if (page == null) {
+            // 索引还未加载，从数据库加载后重新查询
+            loadLikedBizIndex(bizType, userId);
+            page = likedBizIndex.page(bizType, userId, query.from(), query.getPageSize());
+            if (page == null) {
+                return PageDTO.empty(0L, 0L);
             }
-            return null;
-        });
-        // 返回结果
-        return IntStream.range(0, objects.size())
-                .filter(i -> (boolean) objects.get(i))
-                .mapToObj(bizIds::get)
-                .collect(Collectors.toSet());
+        }
+        long pages = (page.getTotal() + query.getPageSize() - 1) / query.getPageSize();
+        return new PageDTO<>(page.getTotal(), pages, page.getBizIds());
     }
 
     @Override
-    public void readLikedTimesAndSendMessage(String bizType, int maxBizSize) {
-        // 读取并移除redis中缓存的点赞总数
-        String key = RedisConstants.LIKES_TIMES_KEY_PREFIX + bizType;
-        Set<ZSetOperations.TypedTuple<String>> tuples = redisTemplate.opsForZSet().popMin(key, maxBizSize);
+    public Map<Long, Integer> queryLikedTimes(String bizType, List<Long> bizIds) {
+        if (CollUtils.isEmpty(bizIds)) {
+            return CollUtils.emptyMap();
+        }
+        // 1.管道批量读取缓存中的点赞总数
+        List<Long> counts = likedUserStore.countLikes(bizIds);
+        Map<Long, Integer> likedTimes = new HashMap<>(bizIds.size());
+        List<Long> missing = new ArrayList<>();
+        for (int i = 0; i < bizIds.size(); i++) {
+            Long count = counts.get(i);
+            if (count == null) {
+                missing.add(bizIds.get(i));
+            } else {
+                likedTimes.put(bizIds.get(i), count.intValue());
+            }
+        }
+        // 2.已淘汰或从未加载的业务从数据库统计，有点赞的冷数据不回填缓存
+        if (CollUtils.isNotEmpty(missing)) {
+            missing.forEach(bizId -> likedTimes.put(bizId, 0));
+            getBaseMapper().countLikedTimes(bizType, missing)
+                    .forEach(dto -> likedTimes.put(dto.getBizId(), dto.getLikedTimes()));
+            // 3.没有点赞的业务加载为空的点赞用户，之后直接从缓存读到0，不再每次查询数据库。
+            // 期间有人点赞时点赞会先完成加载，这里的加载不会覆盖
+            for (Long bizId : missing) {
+                if (likedTimes.get(bizId) == 0) {
+                    likedUserStore.load(bizId, CollUtils.emptyList());
+                }
+            }
+        }
+        return likedTimes;
+    }
+
+    private List<LikedRecord> loadLikedBizIndex(String bizType, Long userId) {
+        List<LikedRecord> records = lambdaQuery()
+                .select(LikedRecord::getBizId, LikedRecord::getCreateTime)
+                .eq(LikedRecord::getUserId, userId)
+                .eq(LikedRecord::getBizType, bizType)
+                .list();
+        likedBizIndex.load(bizType, userId, records);
+        return records;
+    }
+
+    @Override
+    public int persistLikeJournal(int shard, int maxSize) {
+        // 1.批量取出分片中待持久化的日志，写库成功前保留在处理中列表
+        List<String> entries = journalStore.take(shard, maxSize);
+        if (CollUtils.isEmpty(entries)) {
+            return 0;
+        }
+        // 2.合并同一用户对同一业务的多次操作，只保留最后一次
+        Map<String, String[]> latest = new LinkedHashMap<>(entries.size());
+        for (String entry : entries) {
+            String[] fields = entry.split("\\|");
+            if (fields.length < 5) {
+                log.error("点赞日志格式错误：{}", entry);
+                continue;
+            }
+            latest.put(fields[1] + ":" + fields[2], fields);
+        }
+        List<LikedRecord> likes = new ArrayList<>();
+        List<LikedRecord> unlikes = new ArrayList<>();
+        for (String[] fields : latest.values()) {
+            LikedRecord r = new LikedRecord()
+                    .setBizType(fields[0])
+                    .setBizId(Long.valueOf(fields[1]))
+                    .setUserId(Long.valueOf(fields[2]))
+                    .setCreateTime(LocalDateTime.ofInstant(
+                            Instant.ofEpochMilli(Long.parseLong(fields[4])), ZoneId.systemDefault()));
+            ("1".equals(fields[3]) ? likes : unlikes).add(r);
+        }
+        // 3.批量写入数据库，插入时跳过已存在的、按业务和用户删除，重复执行结果不变
+        if (CollUtils.isNotEmpty(likes)) {
+            getBaseMapper().insertBatchIfAbsent(likes);
+        }
+        if (CollUtils.isNotEmpty(unlikes)) {
+            getBaseMapper().deleteBatchByBizAndUser(unlikes);
+        }
+        // 4.写库成功，删除处理中列表
+        journalStore.ack(shard);
+        return entries.size();
+    }
+
+    @Override
+    public int readLikedTimesAndSendMessage(String bizType, int maxBizSize) {
+        // 读取并移除redis中缓存的点赞总数，合并各分片
+        List<ZSetOperations.TypedTuple<String>> tuples = timesStore.popMin(bizType, maxBizSize);
         if (CollUtils.isEmpty(tuples)) {
-            return;
+            return 0;
         }
-        // 数据转换
-        List<LikedTimesDTO> list = new ArrayList<>(tuples.size());
+        // 热点业务待同步的点赞数可能是合并写入前的旧值，发送点赞用户中最新的点赞数，不在缓存中时使用待同步的值
+        List<Long> bizIds = new ArrayList<>(tuples.size());
+        List<Double> scores = new ArrayList<>(tuples.size());
         for (ZSetOperations.TypedTuple<String> tuple : tuples) {
-            Double likedTimes = tuple.getScore();
-            String bizId = tuple.getValue();
-            if (bizId == null || likedTimes == null) {
-                continue;
+            if (tuple.getValue() != null && tuple.getScore() != null) {
+                bizIds.add(Long.valueOf(tuple.getValue()));
+                scores.add(tuple.getScore());
             }
-            list.add(LikedTimesDTO.of(Long.valueOf(bizId), likedTimes.intValue()));
+        }
+        List<Long> counts = likedUserStore.countLikes(bizIds);
+        // 数据转换
+        List<LikedTimesDTO> list = new ArrayList<>(bizIds.size());
+        for (int i = 0; i < bizIds.size(); i++) {
+            Long count = counts.get(i);
+            list.add(LikedTimesDTO.of(bizIds.get(i), count != null ? count.intValue() : scores.get(i).intValue()));
         }
         // 发送mq消息
         mqHelper.send(
                 MqConstants.Exchange.LIKE_RECORD_EXCHANGE,
                 StringUtils.format(MqConstants.Key.LIKED_TIMES_KEY_TEMPLATE, bizType),
                 list);
-    }
-
-    private boolean unlike(LikeRecordFormDTO recordDTO) {
-        Long userId = UserContext.getUser();
-        String key = RedisConstants.LIKE_BIZ_KEY_PREFIX + recordDTO.getBizId();
-        Long result = redisTemplate.opsForSet().remove(key, userId.toString());
-        return result != null && result > 0;
-    }
-
-    private boolean like(LikeRecordFormDTO recordDTO) {
-        Long userId = UserContext.getUser();
-        String key = RedisConstants.LIKE_BIZ_KEY_PREFIX + recordDTO.getBizId();
-        Long result = redisTemplate.opsForSet().add(key, userId.toString());
-        return result != null && result > 0;
+        return tuples.size();
     }
 }
@@ -0,0 +1,71 @@
+package com.tianji.remark.task;
+
+import com.tianji.common.utils.BooleanUtils;
+import com.tianji.remark.cache.LikedJournalStore;
+import com.tianji.remark.constants.RedisConstants;
+import com.tianji.remark.service.ILikedRecordService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 点赞日志持久化任务，日志按业务id分片，每个分片通过Redis锁保证只有一个实例按顺序写库
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LikedRecordJournalTask {
+    private static final int BATCH_SIZE = 1000;
+    private static final Duration LOCK_TTL = Duration.ofSeconds(30);
+    private static final RedisScript<Long> UNLOCK_SCRIPT;
+
+    static {
+        UNLOCK_SCRIPT = RedisScript.of(new ClassPathResource("lua/unlock.lua"), Long.class);
+    }
+
+    private final ILikedRecordService recordService;
+    private final LikedJournalStore journalStore;
+    private final StringRedisTemplate redisTemplate;
+
+    @Scheduled(fixedDelay = 1000)
+    public void persistLikeJournal() {
+        for (int shard = 0; shard < journalStore.shards(); shard++) {
+            persistShard(shard);
+        }
+    }
+
+    private void persistShard(int shard) {
+        // 1.获取分片的锁，失败说明其它实例正在处理
+        String lockKey = RedisConstants.LIKE_JOURNAL_LOCK_KEY_PREFIX + shard;
+        String token = UUID.randomUUID().toString();
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(lockKey, token, LOCK_TTL);
+        if (!BooleanUtils.isTrue(locked)) {
+            return;
+        }
+        try {
+            // 2.循环处理，直到日志不足一批
+            int total = 0;
+            int size;
+            do {
+                size = recordService.persistLikeJournal(shard, BATCH_SIZE);
+                total += size;
+            } while (size == BATCH_SIZE);
+            if (total > 0) {
+                log.debug("点赞日志分片{}持久化完成，共{}条", shard, total);
+            }
+        } catch (Exception e) {
+            log.error("点赞日志分片{}持久化异常", shard, e);
+        } finally {
+            // 3.释放锁，只释放自己持有的锁
+            redisTemplate.execute(UNLOCK_SCRIPT, List.of(lockKey), token);
+        }
+    }
+}
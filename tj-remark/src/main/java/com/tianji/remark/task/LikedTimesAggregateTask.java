@@ -0,0 +1,120 @@
+package com.tianji.remark.task;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tianji.common.utils.CollUtils;
+import com.tianji.remark.cache.LikedTimesStore;
+import com.tianji.remark.cache.LikedUserStore;
+import com.tianji.remark.config.LikedBizTypeConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 热点业务点赞数的本地合并
+ * <p>
+ * 单个实例1秒内点赞次数达到阈值的业务视为热点，点赞脚本不再逐次覆盖待同步的点赞数，只在不存在时写入，
+ * 由本地记录后每200毫秒读取一次最新的点赞总数批量写入。点赞总数由点赞用户计算，不会因为合并而丢失点赞，
+ * 实例在合并写入前宕机时，脚本写入的点赞数仍会触发同步，同步时发送最新的点赞数。
+ * 合并只减少了待同步点赞数ZSet的写入；点赞用户集合在热点业务中按用户id拆分到多个分片，点赞日志按业务和用户分片，
+ * 逐次的写入分散到多个Key
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LikedTimesAggregateTask {
+
+    private final LikedUserStore likedUserStore;
+    private final LikedTimesStore timesStore;
+    private final LikedBizTypeConfig bizTypeConfig;
+    /**
+     * 每个业务在当前1秒窗口内的点赞次数
+     */
+    private final Cache<Long, AtomicInteger> hits = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterWrite(Duration.ofSeconds(1))
+            .build();
+    /**
+     * 待写入点赞数的热点业务，key是业务id，value是业务类型
+     */
+    private final Map<Long, String> pending = new ConcurrentHashMap<>();
+    /**
+     * 当前的热点业务
+     */
+    private Cache<Long, Boolean> hotBiz;
+
+    @PostConstruct
+    public void init() {
+        hotBiz = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(Duration.ofSeconds(bizTypeConfig.getHotLikeHoldSeconds()))
+                .build();
+    }
+
+    /**
+     * 记录一次点赞，并判断业务是否为热点
+     */
+    public boolean isHot(Long bizId) {
+        AtomicInteger counter = hits.get(bizId, k -> new AtomicInteger());
+        if (counter != null && counter.incrementAndGet() >= bizTypeConfig.getHotLikeThreshold()) {
+            hotBiz.put(bizId, Boolean.TRUE);
+            return true;
+        }
+        return hotBiz.getIfPresent(bizId) != null;
+    }
+
+    /**
+     * 热点业务的点赞状态发生变化，等待合并写入，需要在点赞脚本执行之后调用
+     */
+    public void markChanged(String bizType, Long bizId) {
+        pending.put(bizId, bizType);
+    }
+
+    @Scheduled(fixedDelay = 200)
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        // 1.取出窗口内的业务，按业务类型分组，之后的点赞进入下一个窗口
+        Map<String, List<Long>> bizIdsByType = new HashMap<>();
+        for (Long bizId : pending.keySet()) {
+            String bizType = pending.remove(bizId);
+            if (bizType != null) {
+                bizIdsByType.computeIfAbsent(bizType, k -> new ArrayList<>()).add(bizId);
+            }
+        }
+        // 2.读取最新的点赞总数，写入待同步的点赞数
+        bizIdsByType.forEach((bizType, bizIds) -> {
+            try {
+                List<Long> counts = likedUserStore.countLikes(bizIds);
+                Map<Long, Long> likedTimes = new HashMap<>(bizIds.size());
+                for (int i = 0; i < bizIds.size(); i++) {
+                    if (counts.get(i) != null) {
+                        likedTimes.put(bizIds.get(i), counts.get(i));
+                    }
+                }
+                timesStore.putAll(bizType, likedTimes);
+            } catch (Exception e) {
+                log.error("写入热点业务点赞数失败，下个窗口重试", e);
+                bizIds.forEach(bizId -> pending.putIfAbsent(bizId, bizType));
+            }
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flush();
+        if (CollUtils.isNotEmpty(pending)) {
+            log.warn("停机时仍有{}个热点业务的点赞数未写入，将在下次点赞时更新", pending.size());
+        }
+    }
+}
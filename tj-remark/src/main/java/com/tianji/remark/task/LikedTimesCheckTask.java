@@ -1,24 +1,110 @@
 package com.tianji.remark.task;
 
+import com.tianji.common.utils.BooleanUtils;
+import com.tianji.common.utils.CollUtils;
+import com.tianji.remark.cache.LikedTimesStore;
+import com.tianji.remark.config.LikedBizTypeConfig;
+import com.tianji.remark.constants.RedisConstants;
 import com.tianji.remark.service.ILikedRecordService;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * 同步点赞数的任务
+ * <p>
+ * 有积压时按最小间隔检查，并按积压数量调整每批读取的业务数量，积压多时循环读取直到清空；
+ * 连续空闲时检查间隔逐步翻倍。每种业务通过Redis租约保证只有一个实例在同步
+ * </p>
+ */
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class LikedTimesCheckTask {
-    private static final List<String> BIZ_TYPES = List.of("QA", "NOTE");
-    private static final int MAX_BIZ_SIZE = 30;
+    private static final Duration LEASE_TTL = Duration.ofSeconds(30);
+    private static final RedisScript<Long> UNLOCK_SCRIPT;
+
+    static {
+        UNLOCK_SCRIPT = RedisScript.of(new ClassPathResource("lua/unlock.lua"), Long.class);
+    }
 
     private final ILikedRecordService recordService;
+    private final StringRedisTemplate redisTemplate;
+    private final LikedBizTypeConfig bizTypeConfig;
+    private final LikedTimesStore timesStore;
+    /**
+     * 每种业务下次检查的时间
+     */
+    private final Map<String, Long> nextCheckTimes = new ConcurrentHashMap<>();
+    /**
+     * 每种业务当前的检查间隔
+     */
+    private final Map<String, Long> checkIntervals = new ConcurrentHashMap<>();
 
-    @Scheduled(fixedDelay = 20000)
+    @Scheduled(fixedDelay = 1000)
     public void checkLikedTimes(){
-        for (String bizType : BIZ_TYPES) {
-            recordService.readLikedTimesAndSendMessage(bizType, MAX_BIZ_SIZE);
+        List<String> bizTypes = bizTypeConfig.getBizTypes();
+        if (CollUtils.isEmpty(bizTypes)) {
+            return;
+        }
+        for (String bizType : bizTypes) {
+            if (System.currentTimeMillis() < nextCheckTimes.getOrDefault(bizType, 0L)) {
+                continue;
+            }
+            int drained = 0;
+            try {
+                drained = drainLikedTimes(bizType);
+            } catch (Exception e) {
+                log.error("同步业务{}的点赞数异常", bizType, e);
+            }
+            // 有积压则按最小间隔检查，空闲则间隔翻倍
+            long minInterval = bizTypeConfig.getLikedTimesMinIntervalMillis();
+            long interval = drained > 0 ? minInterval : Math.min(
+                    bizTypeConfig.getLikedTimesMaxIntervalMillis(),
+                    checkIntervals.getOrDefault(bizType, minInterval) * 2);
+            checkIntervals.put(bizType, interval);
+            nextCheckTimes.put(bizType, System.currentTimeMillis() + interval);
+        }
+    }
+
+    private int drainLikedTimes(String bizType) {
+        // 1.查询积压数量
+        long backlog = timesStore.backlog(bizType);
+        if (backlog == 0) {
+            return 0;
+        }
+        // 2.获取租约，失败说明其它实例正在同步
+        String leaseKey = RedisConstants.LIKES_TIMES_LEASE_KEY_PREFIX + bizType;
+        String token = UUID.randomUUID().toString();
+        if (!BooleanUtils.isTrue(redisTemplate.opsForValue().setIfAbsent(leaseKey, token, LEASE_TTL))) {
+            return 0;
+        }
+        try {
+            // 3.按积压数量确定批次大小，读满一批说明还有积压，继续读取直到清空或租约过半
+            long deadline = System.currentTimeMillis() + LEASE_TTL.toMillis() / 2;
+            int batchSize = (int) Math.min(bizTypeConfig.getLikedTimesMaxBatchSize(),
+                    Math.max(bizTypeConfig.getLikedTimesMinBatchSize(), backlog));
+            int total = 0;
+            int size;
+            do {
+                size = recordService.readLikedTimesAndSendMessage(bizType, batchSize);
+                total += size;
+            } while (size == batchSize && System.currentTimeMillis() < deadline);
+            log.debug("同步业务{}的点赞数，积压{}，本次同步{}", bizType, backlog, total);
+            return total;
+        } finally {
+            // 4.释放租约，只释放自己持有的
+            redisTemplate.execute(UNLOCK_SCRIPT, List.of(leaseKey), token);
         }
     }
 }
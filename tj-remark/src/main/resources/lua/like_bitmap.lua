@@ -0,0 +1,88 @@
+-- 点赞用户不在缓存中，由调用方从数据库加载后重试
+if(redis.call('HEXISTS', KEYS[1], 'count') == 0) then
+    return -1
+end
+local op = tonumber(ARGV[1])
+-- 用户的偏移量由调用方查询或分配，KEYS[2]是偏移量所在分片的位图，ARGV[6]是分片内的偏移量
+local shard = ARGV[5]
+local low = tonumber(ARGV[6])
+local bitmapKey = KEYS[2]
+-- 分片内的偏移量编码为2字节
+local code = string.char(math.floor(low / 256), low % 256)
+-- 在数组容器中查找编码，只匹配2字节对齐的位置
+local function find(arr)
+    local init = 1
+    while(true) do
+        local pos = string.find(arr, code, init, true)
+        if(not pos or pos % 2 == 1) then
+            return pos
+        end
+        init = pos + 1
+    end
+end
+local changed = 0
+if(redis.call('HEXISTS', KEYS[1], 'b' .. shard) == 1) then
+    -- 位图容器
+    if(redis.call('SETBIT', bitmapKey, low, op) ~= op) then
+        changed = 1
+    end
+else
+    -- 数组容器，不存在说明分片内没有点赞用户
+    local field = 'a' .. shard
+    local arr = redis.call('HGET', KEYS[1], field) or ''
+    local pos = find(arr)
+    if(op == 1 and not pos) then
+        changed = 1
+        if(#arr / 2 < tonumber(ARGV[9])) then
+            redis.call('HSET', KEYS[1], field, arr .. code)
+        else
+            -- 超过数组容器的上限，转换为位图，有效期与元数据一致
+            for i = 1, #arr, 2 do
+                redis.call('SETBIT', bitmapKey, string.byte(arr, i) * 256 + string.byte(arr, i + 1), 1)
+            end
+            redis.call('SETBIT', bitmapKey, low, 1)
+            redis.call('HDEL', KEYS[1], field)
+            redis.call('HSET', KEYS[1], 'b' .. shard, 1)
+            local ttl = redis.call('TTL', KEYS[1])
+            if(ttl > 0) then
+                redis.call('EXPIRE', bitmapKey, ttl)
+            end
+        end
+    elseif(op == 0 and pos) then
+        changed = 1
+        if(#arr == 2) then
+            redis.call('HDEL', KEYS[1], field)
+        else
+            redis.call('HSET', KEYS[1], field, string.sub(arr, 1, pos - 1) .. string.sub(arr, pos + 2))
+        end
+    end
+end
+-- 剩余有效期不足一半时返回值加2，由调用方声明所有位图分片后刷新有效期，避免每次点赞都遍历分片
+local refresh = 0
+if(redis.call('TTL', KEYS[1]) < tonumber(ARGV[3]) / 2) then
+    refresh = 2
+end
+if(changed == 0) then
+    return refresh
+end
+local count = redis.call('HINCRBY', KEYS[1], 'count', op == 1 and 1 or -1)
+-- 热点业务由调用方在本地合并后写入点赞数，这里只在没有待同步的点赞数时写入（NX），
+-- 调用方合并写入前宕机时点赞数也会同步，同步时读取最新的点赞数
+if(ARGV[8] ~= '1') then
+    redis.call('ZADD', KEYS[3], count, ARGV[2])
+else
+    redis.call('ZADD', KEYS[3], 'NX', count, ARGV[2])
+end
+-- 追加到待持久化的日志
+redis.call('RPUSH', KEYS[4], ARGV[4])
+-- 维护用户点赞过的业务索引，还未从数据库加载（没有占位成员）时也写入，避免加载时数据库还没有持久化本次操作。
+-- 点赞的score是时间戳，未加载时取消点赞写入负的时间戳作为墓碑，加载时合并数据库记录后删除墓碑
+if(op == 1) then
+    redis.call('ZADD', KEYS[5], ARGV[7], ARGV[2])
+elseif(redis.call('ZSCORE', KEYS[5], '0')) then
+    redis.call('ZREM', KEYS[5], ARGV[2])
+else
+    redis.call('ZADD', KEYS[5], '-' .. ARGV[7], ARGV[2])
+end
+redis.call('EXPIRE', KEYS[5], ARGV[3])
+return 1 + refresh
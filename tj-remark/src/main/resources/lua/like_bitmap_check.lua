@@ -0,0 +1,41 @@
+-- 返回与业务一一对应的点赞状态，1：已点赞，0：未点赞，-1：点赞用户不在缓存中
+-- 用户的偏移量由调用方查询，KEYS前一半是业务的元数据，后一半是偏移量所在分片的位图，ARGV[1]是分片号，ARGV[2]是分片内的偏移量。
+-- 用户没有偏移量（从未点赞过）时KEYS只有元数据，ARGV[1]为空
+local hasOffset = ARGV[1] ~= ''
+local n = #KEYS
+local shard, low, code
+if(hasOffset) then
+    n = #KEYS / 2
+    shard = ARGV[1]
+    low = tonumber(ARGV[2])
+    code = string.char(math.floor(low / 256), low % 256)
+end
+local result = {}
+for i = 1, n do
+    local metaKey = KEYS[i]
+    local status = 0
+    if(redis.call('HEXISTS', metaKey, 'count') == 0) then
+        status = -1
+    elseif(hasOffset) then
+        if(redis.call('HEXISTS', metaKey, 'b' .. shard) == 1) then
+            status = redis.call('GETBIT', KEYS[n + i], low)
+        else
+            -- 在数组容器中查找编码，只匹配2字节对齐的位置
+            local arr = redis.call('HGET', metaKey, 'a' .. shard) or ''
+            local init = 1
+            while(true) do
+                local pos = string.find(arr, code, init, true)
+                if(not pos) then
+                    break
+                end
+                if(pos % 2 == 1) then
+                    status = 1
+                    break
+                end
+                init = pos + 1
+            end
+        end
+    end
+    table.insert(result, status)
+end
+return result
@@ -0,0 +1,6 @@
+-- KEYS[1]是元数据，之后是所有位图分片。先刷新分片，最后刷新元数据，中途失败时下次点赞仍会触发刷新
+for i = 2, #KEYS do
+    redis.call('EXPIRE', KEYS[i], ARGV[1])
+end
+redis.call('EXPIRE', KEYS[1], ARGV[1])
+return 1
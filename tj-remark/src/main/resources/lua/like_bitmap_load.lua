@@ -0,0 +1,56 @@
+-- 已经加载完成，放弃本次加载
+if(redis.call('HEXISTS', KEYS[1], 'count') == 1) then
+    return 0
+end
+-- 用户的偏移量由调用方分配并按分片分组，KEYS[i]（i >= 2）是分片的位图，
+-- ARGV[2 * i]是分片号，ARGV[2 * i + 1]是本批用户在分片内的偏移量，逗号分隔
+for i = 2, #KEYS do
+    local shard = ARGV[2 * i]
+    local lows = {}
+    for low in string.gmatch(ARGV[2 * i + 1], '%d+') do
+        table.insert(lows, tonumber(low))
+    end
+    local field = 'a' .. shard
+    if(redis.call('HEXISTS', KEYS[1], 'b' .. shard) == 0) then
+        -- 与已有的数组容器合并去重，数量不超过上限时仍为数组容器，否则转换为位图
+        local arr = redis.call('HGET', KEYS[1], field) or ''
+        local seen = {}
+        local codes = {}
+        local merged = {}
+        for j = 1, #arr, 2 do
+            local code = string.sub(arr, j, j + 1)
+            seen[code] = true
+            table.insert(codes, code)
+            table.insert(merged, string.byte(arr, j) * 256 + string.byte(arr, j + 1))
+        end
+        for _, low in ipairs(lows) do
+            local code = string.char(math.floor(low / 256), low % 256)
+            if(not seen[code]) then
+                seen[code] = true
+                table.insert(codes, code)
+                table.insert(merged, low)
+            end
+        end
+        if(#codes <= tonumber(ARGV[3])) then
+            redis.call('HSET', KEYS[1], field, table.concat(codes))
+            lows = nil
+        else
+            redis.call('HDEL', KEYS[1], field)
+            redis.call('HSET', KEYS[1], 'b' .. shard, 1)
+            lows = merged
+        end
+    end
+    if(lows) then
+        for _, low in ipairs(lows) do
+            redis.call('SETBIT', KEYS[i], low, 1)
+        end
+        redis.call('EXPIRE', KEYS[i], ARGV[1])
+    end
+end
+-- 最后一批写入点赞数，标记加载完成
+if(ARGV[2] ~= '-1') then
+    redis.call('HSETNX', KEYS[1], 'count', ARGV[2])
+end
+-- 没有人点赞时元数据在写入点赞数后才存在，最后设置有效期
+redis.call('EXPIRE', KEYS[1], ARGV[1])
+return 1
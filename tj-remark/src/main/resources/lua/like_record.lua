@@ -0,0 +1,75 @@
+-- 点赞用户集合不在缓存中，由调用方从数据库加载后重试
+if(redis.call('EXISTS', KEYS[1]) == 0) then
+    return -1
+end
+-- 只有从数据库加载的集合（包含占位成员）才设置有效期，之前只保存在Redis中的集合不能淘汰
+local loaded = redis.call('SISMEMBER', KEYS[1], '0')
+local ttl = tonumber(ARGV[4])
+-- 热点业务的点赞用户按用户id拆分：集合中写入拆分标记s，之后的点赞写入用户所在的分片KEYS[5]，
+-- 原集合只剩读取和取消点赞，点赞用户是原集合与各分片的并集。拆分后不再合并
+local split = redis.call('SISMEMBER', KEYS[1], 's') == 1
+if(not split and ARGV[7] == '1') then
+    redis.call('SADD', KEYS[1], 's')
+    split = true
+end
+local changed
+local refresh = 0
+if(not split) then
+    if(ARGV[1] == '1') then
+        changed = redis.call('SADD', KEYS[1], ARGV[2])
+    else
+        changed = redis.call('SREM', KEYS[1], ARGV[2])
+    end
+    if(loaded == 1) then
+        redis.call('EXPIRE', KEYS[1], ttl)
+    end
+else
+    if(ARGV[1] == '1') then
+        if(redis.call('SISMEMBER', KEYS[1], ARGV[2]) == 1) then
+            changed = 0
+        else
+            changed = redis.call('SADD', KEYS[5], ARGV[2])
+        end
+    else
+        changed = redis.call('SREM', KEYS[5], ARGV[2]) + redis.call('SREM', KEYS[1], ARGV[2])
+    end
+    if(loaded == 1) then
+        -- 新建的分片有效期与原集合一致；剩余有效期不足一半时返回值加2，由调用方刷新原集合和所有分片，
+        -- 避免每次点赞都写入原集合
+        local remain = redis.call('TTL', KEYS[1])
+        if(remain > 0 and redis.call('TTL', KEYS[5]) == -1) then
+            redis.call('EXPIRE', KEYS[5], remain)
+        end
+        if(remain < ttl / 2) then
+            refresh = 2
+        end
+    end
+end
+if(changed == 0) then
+    return refresh
+end
+-- 点赞数，不包含占位成员和拆分标记，拆分后只统计了用户所在的分片，同步时读取最新的点赞数。
+-- 热点业务由调用方在本地合并后写入，这里只在没有待同步的点赞数时写入（NX），
+-- 调用方合并写入前宕机时点赞数也会同步
+local count = redis.call('SCARD', KEYS[1]) - loaded
+if(split) then
+    count = count - 1 + redis.call('SCARD', KEYS[5])
+end
+if(ARGV[7] ~= '1') then
+    redis.call('ZADD', KEYS[2], count, ARGV[3])
+else
+    redis.call('ZADD', KEYS[2], 'NX', count, ARGV[3])
+end
+-- 追加到待持久化的日志
+redis.call('RPUSH', KEYS[3], ARGV[5])
+-- 维护用户点赞过的业务索引，还未从数据库加载（没有占位成员）时也写入，避免加载时数据库还没有持久化本次操作。
+-- 点赞的score是时间戳，未加载时取消点赞写入负的时间戳作为墓碑，加载时合并数据库记录后删除墓碑
+if(ARGV[1] == '1') then
+    redis.call('ZADD', KEYS[4], ARGV[6], ARGV[3])
+elseif(redis.call('ZSCORE', KEYS[4], '0')) then
+    redis.call('ZREM', KEYS[4], ARGV[3])
+else
+    redis.call('ZADD', KEYS[4], '-' .. ARGV[6], ARGV[3])
+end
+redis.call('EXPIRE', KEYS[4], ARGV[4])
+return 1 + refresh
@@ -0,0 +1,11 @@
+-- 用户id映射为连续的偏移量，所有业务共用，不存在则分配新的偏移量。返回与用户id一一对应的偏移量
+local result = {}
+for i = 1, #ARGV do
+    local offset = redis.call('HGET', KEYS[1], ARGV[i])
+    if(not offset) then
+        offset = redis.call('INCR', KEYS[2]) - 1
+        redis.call('HSET', KEYS[1], ARGV[i], offset)
+    end
+    table.insert(result, tonumber(offset))
+end
+return result
@@ -0,0 +1,15 @@
+-- 已经加载完成，放弃本次加载
+if(redis.call('ZSCORE', KEYS[1], '0')) then
+    return 0
+end
+-- 点赞脚本写入的点赞和墓碑比数据库新，不覆盖
+for i = 3, #ARGV, 2 do
+    redis.call('ZADD', KEYS[1], 'NX', ARGV[i], ARGV[i + 1])
+end
+-- 最后一批删除墓碑，写入占位成员，标记加载完成
+if(ARGV[2] == '1') then
+    redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', '(0')
+    redis.call('ZADD', KEYS[1], 0, '0')
+end
+redis.call('EXPIRE', KEYS[1], ARGV[1])
+return 1
@@ -0,0 +1,9 @@
+-- 索引已过期则不补充，下次查询时重新从数据库加载
+if(not redis.call('ZSCORE', KEYS[1], '0')) then
+    return 0
+end
+-- 只补充不存在的成员，已有的点赞不覆盖
+for i = 2, #ARGV do
+    redis.call('ZADD', KEYS[1], 'NX', ARGV[1], ARGV[i])
+end
+return 1
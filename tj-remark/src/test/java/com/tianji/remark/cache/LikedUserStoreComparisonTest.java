@@ -0,0 +1,258 @@
+package com.tianji.remark.cache;
+
+import com.tianji.remark.config.LikedBizTypeConfig;
+import com.tianji.remark.domain.dto.LikeRecordFormDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 集合存储与位图存储的对比：结果一致性、MEMORY USAGE和操作耗时
+ * <p>
+ * 需要真实的Redis，默认不执行，通过-Dtj.remark.test.redis=host:port指定，
+ * 使用-Dtj.remark.test.redis-db指定的库（默认15），执行前后删除其中likes:开头的Key
+ * </p>
+ */
+@EnabledIfSystemProperty(named = "tj.remark.test.redis", matches = ".+")
+class LikedUserStoreComparisonTest {
+
+    private static final String BIZ_TYPE = "QA";
+    private static final int USERS = 100_000;
+    private static final int BIZ_COUNT = 2_000;
+    private static final int OPS = 20_000;
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+    private LikedBizTypeConfig config;
+
+    @BeforeEach
+    void setUp() {
+        String[] address = System.getProperty("tj.remark.test.redis").split(":");
+        RedisStandaloneConfiguration standalone =
+                new RedisStandaloneConfiguration(address[0], Integer.parseInt(address[1]));
+        standalone.setDatabase(Integer.getInteger("tj.remark.test.redis-db", 15));
+        connectionFactory = new LettuceConnectionFactory(standalone);
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        config = new LikedBizTypeConfig();
+        config.setBizTypes(List.of(BIZ_TYPE));
+        cleanUp();
+    }
+
+    @AfterEach
+    void tearDown() {
+        cleanUp();
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void testStoresMatchModel() {
+        // 分片和数组容器都设置得很小，覆盖多分片、数组转换为位图、取消点赞等情况
+        config.setLikeBitmapShardBits(64);
+        config.setLikeBitmapArrayMaxSize(8);
+        LikedUserStore setStore = setStore();
+        LikedUserStore bitmapStore = bitmapStore();
+        Map<Long, Set<Long>> model = new HashMap<>();
+        Random random = new Random(20240601L);
+        List<Long> bizIds = new ArrayList<>();
+        for (long bizId = 1; bizId <= 20; bizId++) {
+            bizIds.add(bizId);
+            // 部分业务从数据库加载时已有点赞用户
+            Set<Long> likers = new HashSet<>();
+            for (int i = random.nextInt(30); i > 0; i--) {
+                likers.add(userIdOf(random.nextInt(300)));
+            }
+            model.put(bizId, likers);
+            setStore.load(bizId, new ArrayList<>(likers));
+            bitmapStore.load(bizId, new ArrayList<>(likers));
+        }
+        for (int i = 0; i < 5_000; i++) {
+            Long bizId = bizIds.get(random.nextInt(bizIds.size()));
+            Long userId = userIdOf(random.nextInt(300));
+            boolean liked = random.nextInt(3) > 0;
+            LikeRecordFormDTO dto = likeOf(bizId, liked);
+            Set<Long> likers = model.get(bizId);
+            long expected = (liked ? likers.add(userId) : likers.remove(userId)) ? 1 : 0;
+            // 部分业务作为热点，集合存储拆分点赞用户
+            boolean hot = bizId % 4 == 0 && i > 1_000;
+            assertEquals(expected, setStore.like(dto, userId, hot), "set store, op " + i);
+            assertEquals(expected, bitmapStore.like(dto, userId, hot), "bitmap store, op " + i);
+        }
+        // 未加载的业务返回null
+        List<Long> queryBizIds = new ArrayList<>(bizIds);
+        queryBizIds.add(999L);
+        List<Long> expectedCounts = new ArrayList<>();
+        for (Long bizId : queryBizIds) {
+            Set<Long> likers = model.get(bizId);
+            expectedCounts.add(likers == null ? null : (long) likers.size());
+        }
+        assertEquals(expectedCounts, setStore.countLikes(queryBizIds));
+        assertEquals(expectedCounts, bitmapStore.countLikes(queryBizIds));
+        // 包括从未点赞过的用户
+        for (int u = 0; u < 320; u++) {
+            Long userId = userIdOf(u);
+            List<Boolean> expected = new ArrayList<>();
+            for (Long bizId : queryBizIds) {
+                Set<Long> likers = model.get(bizId);
+                expected.add(likers == null ? null : likers.contains(userId));
+            }
+            assertEquals(expected, setStore.isLiked(userId, queryBizIds), "set store, user " + u);
+            assertEquals(expected, bitmapStore.isLiked(userId, queryBizIds), "bitmap store, user " + u);
+        }
+    }
+
+    @Test
+    void testMemoryAndLatency() {
+        // 1.长尾分布：大部分业务只有几个点赞，少量业务上万
+        Random random = new Random(20240602L);
+        Map<Long, List<Long>> likers = new HashMap<>();
+        for (long bizId = 1; bizId <= BIZ_COUNT; bizId++) {
+            int p = random.nextInt(100);
+            int size = p < 90 ? 1 + random.nextInt(10)
+                    : p < 99 ? 10 + random.nextInt(1_000) : 5_000 + random.nextInt(20_000);
+            Set<Long> users = new HashSet<>();
+            while (users.size() < size) {
+                users.add(userIdOf(random.nextInt(USERS)));
+            }
+            likers.put(bizId, new ArrayList<>(users));
+        }
+        // 2.分别加载并执行相同的点赞、查询操作
+        System.out.println("store   | tail(<=10) avg B | mid avg B | hot avg B | total KB | like avg us | isLiked(10) avg us");
+        Map<String, long[]> tails = new HashMap<>();
+        for (String name : List.of("set", "bitmap")) {
+            cleanUp();
+            LikedUserStore store = "set".equals(name) ? setStore() : bitmapStore();
+            likers.forEach(store::load);
+            Random opRandom = new Random(20240603L);
+            long likeNanos = 0;
+            for (int i = 0; i < OPS; i++) {
+                LikeRecordFormDTO dto = likeOf(1L + opRandom.nextInt(BIZ_COUNT), opRandom.nextBoolean());
+                Long userId = userIdOf(opRandom.nextInt(USERS));
+                long start = System.nanoTime();
+                store.like(dto, userId, false);
+                likeNanos += System.nanoTime() - start;
+            }
+            long checkNanos = 0;
+            for (int i = 0; i < OPS / 10; i++) {
+                List<Long> bizIds = new ArrayList<>(10);
+                for (int j = 0; j < 10; j++) {
+                    bizIds.add(1L + opRandom.nextInt(BIZ_COUNT));
+                }
+                Long userId = userIdOf(opRandom.nextInt(USERS));
+                long start = System.nanoTime();
+                store.isLiked(userId, bizIds);
+                checkNanos += System.nanoTime() - start;
+            }
+            // 3.按业务统计内存，用户偏移量映射所有业务共用，单独统计
+            long[] tail = new long[2];
+            long[] mid = new long[2];
+            long[] hot = new long[2];
+            long total = 0;
+            Map<Long, Long> usage = memoryUsageByBiz("set".equals(name) ? "likes:set:biz:" : "likes:bm:biz:");
+            for (Map.Entry<Long, Long> e : usage.entrySet()) {
+                int size = likers.get(e.getKey()).size();
+                long[] bucket = size <= 10 ? tail : size < 5_000 ? mid : hot;
+                bucket[0] += e.getValue();
+                bucket[1]++;
+                total += e.getValue();
+            }
+            System.out.printf("%-7s | %16d | %9d | %9d | %8d | %11.1f | %18.1f%n", name,
+                    avg(tail), avg(mid), avg(hot), total / 1024,
+                    likeNanos / 1000.0 / OPS, checkNanos / 1000.0 / (OPS / 10));
+            if ("bitmap".equals(name)) {
+                System.out.println("bitmap offset map KB (shared): "
+                        + (memoryUsage("likes:uid:offset") + memoryUsage("likes:uid:seq")) / 1024);
+            }
+            tails.put(name, tail);
+        }
+        // 4.长尾业务的内存不能明显超过集合存储
+        assertTrue(avg(tails.get("bitmap")) <= 2 * avg(tails.get("set")),
+                "bitmap tail " + avg(tails.get("bitmap")) + "B, set tail " + avg(tails.get("set")) + "B");
+    }
+
+    private LikedUserStore setStore() {
+        return new SetLikedUserStore(redisTemplate, config,
+                new LikedTimesStore(redisTemplate, config), new LikedJournalStore(redisTemplate, config));
+    }
+
+    private LikedUserStore bitmapStore() {
+        return new BitmapLikedUserStore(redisTemplate, config,
+                new LikedTimesStore(redisTemplate, config), new LikedJournalStore(redisTemplate, config));
+    }
+
+    private static Long userIdOf(int i) {
+        // 模拟雪花算法生成的用户id
+        return 1_500_000_000_000_000_000L + i * 4_099L;
+    }
+
+    private static LikeRecordFormDTO likeOf(Long bizId, boolean liked) {
+        LikeRecordFormDTO dto = new LikeRecordFormDTO();
+        dto.setBizId(bizId);
+        dto.setBizType(BIZ_TYPE);
+        dto.setLiked(liked);
+        return dto;
+    }
+
+    private static long avg(long[] bucket) {
+        return bucket[1] == 0 ? 0 : bucket[0] / bucket[1];
+    }
+
+    /**
+     * 统计前缀下每个业务的内存，位图存储包括元数据和所有位图分片
+     */
+    private Map<Long, Long> memoryUsageByBiz(String prefix) {
+        Map<Long, Long> usage = new HashMap<>();
+        for (String key : scan(prefix + "*")) {
+            // 位图存储的Key使用hash tag：likes:bm:biz:{bizId}:分片号
+            String rest = key.substring(prefix.length()).replace("{", "").replace("}", "");
+            int i = rest.indexOf(':');
+            Long bizId = Long.valueOf(i < 0 ? rest : rest.substring(0, i));
+            usage.merge(bizId, memoryUsage(key), Long::sum);
+        }
+        return usage;
+    }
+
+    private long memoryUsage(String key) {
+        Object result = redisTemplate.execute((RedisCallback<Object>) connection -> connection.execute("MEMORY",
+                "USAGE".getBytes(StandardCharsets.UTF_8), key.getBytes(StandardCharsets.UTF_8),
+                "SAMPLES".getBytes(StandardCharsets.UTF_8), "0".getBytes(StandardCharsets.UTF_8)));
+        return result == null ? 0 : ((Number) result).longValue();
+    }
+
+    private List<String> scan(String pattern) {
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(1000).build();
+        return redisTemplate.execute((RedisCallback<List<String>>) connection -> {
+            List<String> keys = new ArrayList<>();
+            try (Cursor<byte[]> cursor = connection.scan(options)) {
+                cursor.forEachRemaining(key -> keys.add(new String(key, StandardCharsets.UTF_8)));
+            }
+            return keys;
+        });
+    }
+
+    private void cleanUp() {
+        List<String> keys = scan("likes:*");
+        if (!keys.isEmpty()) {
+            redisTemplate.delete(keys);
+        }
+    }
+}